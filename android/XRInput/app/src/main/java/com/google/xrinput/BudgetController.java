@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Picks the quality tier the device can sustain from its thermal status, battery level and
+ * charging state. Quality drops as soon as either gets worse, but only recovers one tier at a time
+ * after a hold period, so the tier does not oscillate around a threshold. State is only changed on
+ * the main thread.
+ */
+public class BudgetController {
+  private static final String TAG = BudgetController.class.getSimpleName();
+
+  // battery levels (percent, while not charging) at which quality drops to each tier
+  private static final int BATTERY_MEDIUM_PERCENT = 30;
+  private static final int BATTERY_LOW_PERCENT = 15;
+  private static final int BATTERY_MINIMAL_PERCENT = 5;
+
+  // minimum time spent in a tier before stepping back up
+  private static final long STEP_UP_HOLD_MS = 60_000;
+
+  private final Context context;
+  private final PowerManager powerManager;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private OnQualityTierChangedListener onQualityTierChangedListener;
+
+  // written on the main thread, read from any thread for status reports
+  private volatile QualityTier tier = QualityTier.HIGH;
+  private volatile QualityTier pinnedTier = null; // null: follow thermal and battery state
+  private volatile int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+  private volatile int batteryPercent = 100;
+  private volatile boolean charging = true;
+  private long timeOfLastTierChange_ms = 0;
+  private boolean started = false;
+
+  /** Notified on the main thread whenever the tier changes. */
+  public interface OnQualityTierChangedListener {
+    void onQualityTierChanged(QualityTier tier);
+  }
+
+  private final PowerManager.OnThermalStatusChangedListener thermalListener =
+      status -> {
+        thermalStatus = status;
+        evaluate();
+      };
+
+  private final BroadcastReceiver batteryReceiver =
+      new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+          updateBattery(intent);
+          evaluate();
+        }
+      };
+
+  private final Runnable evaluateCode = this::evaluate;
+
+  public BudgetController(Context context) {
+    this.context = context;
+    powerManager = context.getSystemService(PowerManager.class);
+  }
+
+  /** Starts following the thermal and battery state (main thread). */
+  public void start() {
+    if (started) return;
+    started = true;
+
+    thermalStatus = powerManager.getCurrentThermalStatus();
+    powerManager.addThermalStatusListener(context.getMainExecutor(), thermalListener);
+
+    // the battery broadcast is sticky, so registering also returns the current state
+    Intent battery =
+        context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    if (battery != null) updateBattery(battery);
+    evaluate();
+  }
+
+  /** Stops following the thermal and battery state (main thread). */
+  public void stop() {
+    if (!started) return;
+    started = false;
+
+    powerManager.removeThermalStatusListener(thermalListener);
+    context.unregisterReceiver(batteryReceiver);
+    handler.removeCallbacks(evaluateCode);
+  }
+
+  /** Holds the tier at the given one, or follows the device state again if null (any thread). */
+  public void setPinnedTier(QualityTier pinned) {
+    handler.post(
+        () -> {
+          pinnedTier = pinned;
+          Log.d(TAG, "Pinned quality tier: " + (pinned == null ? "AUTO" : pinned));
+          evaluate();
+        });
+  }
+
+  private void updateBattery(Intent intent) {
+    int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+    int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+    if (level >= 0 && scale > 0) batteryPercent = level * 100 / scale;
+    charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+  }
+
+  private QualityTier thermalTier() {
+    switch (thermalStatus) {
+      case PowerManager.THERMAL_STATUS_NONE:
+      case PowerManager.THERMAL_STATUS_LIGHT:
+        return QualityTier.HIGH;
+      case PowerManager.THERMAL_STATUS_MODERATE:
+        return QualityTier.MEDIUM;
+      case PowerManager.THERMAL_STATUS_SEVERE:
+        return QualityTier.LOW;
+      default:
+        return QualityTier.MINIMAL;
+    }
+  }
+
+  private QualityTier batteryTier() {
+    if (charging || batteryPercent > BATTERY_MEDIUM_PERCENT) return QualityTier.HIGH;
+    if (batteryPercent > BATTERY_LOW_PERCENT) return QualityTier.MEDIUM;
+    if (batteryPercent > BATTERY_MINIMAL_PERCENT) return QualityTier.LOW;
+    return QualityTier.MINIMAL;
+  }
+
+  private void evaluate() {
+    handler.removeCallbacks(evaluateCode);
+    QualityTier target =
+        pinnedTier != null ? pinnedTier : QualityTier.worst(thermalTier(), batteryTier());
+    if (target == tier) return;
+
+    // drop (or follow a pinned tier) right away
+    if (target.ordinal() > tier.ordinal() || pinnedTier != null) {
+      setTier(target);
+      return;
+    }
+
+    // recover one tier per hold period
+    long wait_ms = timeOfLastTierChange_ms + STEP_UP_HOLD_MS - SystemClock.elapsedRealtime();
+    if (wait_ms > 0) {
+      handler.postDelayed(evaluateCode, wait_ms);
+      return;
+    }
+    setTier(QualityTier.values()[tier.ordinal() - 1]);
+    if (target != tier) handler.postDelayed(evaluateCode, STEP_UP_HOLD_MS);
+  }
+
+  private void setTier(QualityTier newTier) {
+    tier = newTier;
+    timeOfLastTierChange_ms = SystemClock.elapsedRealtime();
+    Log.d(TAG, "Quality tier: " + tier);
+    if (onQualityTierChangedListener != null) {
+      onQualityTierChangedListener.onQualityTierChanged(tier);
+    }
+  }
+
+  /** Getter Functions */
+  public QualityTier getTier() {
+    return tier;
+  }
+
+  public boolean isPinned() {
+    return pinnedTier != null;
+  }
+
+  public int getThermalStatus() {
+    return thermalStatus;
+  }
+
+  public int getBatteryPercent() {
+    return batteryPercent;
+  }
+
+  public boolean isCharging() {
+    return charging;
+  }
+
+  public void setOnQualityTierChangedListener(OnQualityTierChangedListener listener) {
+    onQualityTierChangedListener = listener;
+  }
+}
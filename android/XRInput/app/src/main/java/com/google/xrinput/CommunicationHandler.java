@@ -20,32 +20,138 @@ import android.app.Activity;
 import android.graphics.Point;
 import android.hardware.Sensor;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
+import com.google.ar.core.DepthPoint;
+import com.google.ar.core.HitResult;
+import com.google.ar.core.Plane;
 import com.google.ar.core.Pose;
+import com.google.ar.core.Trackable;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
 
 public class CommunicationHandler {
-  private Transceiver transceiver;
+  private final String TAG = CommunicationHandler.class.getSimpleName();
+  private volatile Transceiver transceiver;
   private final int sendPort = 5555;
   private final int receivePort = 5556;
   private Boolean isConnected = false;
   private Activity mainApp;
   private Vibrator vibrator;
+  private CommandListener commandListener;
 
   // timer
   private Timer resetHeartbeatTimer;
   private TimerTask resetHeartbeatTask;
   private boolean timerRunning = false;
   private final long heartbeatThreshold_ms = 1000;
-  private long timeOfLastMsg_touchMove_ms = 0;
-  private final long msgRate_touchMove_ms = -1;
-  private long timeOfLastMsg_DeviceInfo_ms = 0;
-  private final long msgRate_DeviceInfo_ms = 20;
+
+  // round-trip time, measured with PING/PONG
+  private final long pingInterval_ms = 1000;
+  private TimerTask pingTask;
+  private volatile long roundTripTime_ns = 0; // smoothed, 0 until measured
+
+  // per-stream send rates
+  private final StreamScheduler streamScheduler = new StreamScheduler();
+
+  // whether the HMD asked for several messages per datagram (SET_PACKING)
+  private volatile boolean packingRequested = false;
+
+  // WearOS devices relayed through this phone (sub-device IDs 1, 2, ...)
+  private final WatchRelay watchRelay = new WatchRelay(this);
+
+  // battery- and thermal-aware quality tier (reported on request and whenever it changes)
+  private volatile BudgetController budgetController;
+
+  // reused for reading sensor values (sensor messages are sent from the streaming thread)
+  private final float[] sensorValuesScratch = new float[SensorValueStore.MAX_VALUES];
+
+  // per-stream change detection
+  private final DeadbandFilter deadbandFilter = new DeadbandFilter();
+  private String lastSentDeviceOrientation;
+
+  // on-device fused orientation
+  private final float[] fusedOrientationScratch = new float[4];
+  private final float[] angularVelocityScratch = new float[3];
+  private volatile boolean sendFusedAngularVelocity = true;
+
+  // pose prediction (poses are sent from the GL thread)
+  private final PosePredictor posePredictor = new PosePredictor();
+  private volatile boolean posePredictionEnabled = false;
+  private volatile long predictionExtraHorizon_ms = 0;
+  private final float[] poseGyroScratch = new float[SensorValueStore.MAX_VALUES];
+  private final float[] predictedPosition = new float[3];
+  private final float[] predictedRotation = new float[4];
+
+  // plane polygons (planes are sent from the GL thread)
+  private static final int MAX_PLANE_VERTICES_PER_PACKET = 100;
+  private static final int MAX_HIT_TEST_RESULTS_PER_PACKET = 8;
+  private final StringBuilder planeBuilder = new StringBuilder(1500);
+
+  // touch frames (sent from the UI thread)
+  private volatile boolean touchFramesEnabled = false;
+  private final StringBuilder touchFrameBuilder = new StringBuilder(1500);
+  private volatile boolean touchPredictionEnabled = false;
+  private volatile long touchPredictionExtraHorizon_ms = 0;
+  private final int[] predictedTouchIds = new int[10];
+  private final float[] predictedTouchPositions = new float[2 * predictedTouchIds.length];
+
+  // stylus (contact samples come from the raw touch thread, hover samples from the UI thread)
+  private volatile boolean stylusEnabled = false;
+  private final StringBuilder stylusBuilder = new StringBuilder(1500);
+
+  // hit test results (sent from the GL thread)
+  private final StringBuilder hitTestBuilder = new StringBuilder(1500);
+
+  // multi-sample packets (keeps datagrams well below a typical MTU)
+  private static final int MAX_SAMPLES_PER_BATCH = 20;
+  private final StringBuilder batchBuilder = new StringBuilder(1024);
+
+  /** Handles downlink commands that control data acquisition outside of communication. */
+  public interface CommandListener {
+    void onSetSensorBatching(int maxReportLatency_ms);
+
+    /** @param drainInterval_ms how often lossless samples are sent, or 0 to keep the current one */
+    void onSetLossless(Stream stream, boolean enabled, long drainInterval_ms);
+
+    /** @param gain filter gain, or 0 to keep the current one */
+    void onSetFusion(boolean enabled, boolean useMagnetometer, float gain);
+
+    void onSetMotionGestures(boolean enabled);
+
+    void onSetARCoreProfile(ARCoreProfile profile);
+
+    void onSetPlaneStreaming(boolean enabled);
+
+    /**
+     * @param step downsampling factor, or 0 to keep the current one
+     * @param regionOfInterest normalized x, y, width, height, or null to keep the current one
+     */
+    void onSetDepthStreaming(boolean enabled, int step, float[] regionOfInterest);
+
+    void onSetLowLatencyTouch(boolean enabled);
+
+    /** @param rays origin x, y, z and direction x, y, z per ray, in ARCore world coordinates */
+    void onHitTestBatch(int requestId, float[] rays);
+
+    /** Called after streams were subscribed or unsubscribed (see StreamScheduler.isSubscribed). */
+    void onSubscriptionsChanged();
+
+    /** Called when the HMD subscribed to FUSED_ORIENTATION by name, which turns fusion on. */
+    void onFusedOrientationSubscribed();
+  }
 
   public CommunicationHandler(Activity activity) {
     mainApp = activity;
@@ -56,9 +162,23 @@ public class CommunicationHandler {
 
   public void openConnection(String ipAddress) {
     transceiver = new Transceiver(ipAddress, sendPort, receivePort, this);
+    packingRequested = false;
+
+    // measure the round-trip time periodically
+    roundTripTime_ns = 0;
+    pingTask =
+        new TimerTask() {
+          @Override
+          public void run() {
+            sendPing();
+          }
+        };
+    resetHeartbeatTimer.schedule(pingTask, 0, pingInterval_ms);
   }
 
   public void closeConnection() {
+    if (pingTask != null) pingTask.cancel();
+    watchRelay.setEnabled(false);
     transceiver.close();
   }
 
@@ -86,17 +206,114 @@ public class CommunicationHandler {
     return isConnected;
   }
 
+  public StreamScheduler getStreamScheduler() {
+    return streamScheduler;
+  }
+
+  public DeadbandFilter getDeadbandFilter() {
+    return deadbandFilter;
+  }
+
+  public PosePredictor getPosePredictor() {
+    return posePredictor;
+  }
+
+  /** Smoothed round-trip time to the HMD in milliseconds, or 0 if not measured yet. */
+  public float getRoundTripTime_ms() {
+    return roundTripTime_ns / 1e6f;
+  }
+
+  public void setCommandListener(CommandListener listener) {
+    commandListener = listener;
+  }
+
+  public void setBudgetController(BudgetController controller) {
+    budgetController = controller;
+  }
+
   /** Sensor Messages */
+  public void sendSensor(int sensorType, SensorHandler sensorHandler) {
+    switch (sensorType) {
+      case Sensor.TYPE_ACCELEROMETER:
+        sendAccelerometer(sensorHandler);
+        break;
+      case Sensor.TYPE_GRAVITY:
+        sendGravity(sensorHandler);
+        // device orientation is derived from gravity
+        sendDeviceOrientation(sensorHandler);
+        break;
+      case Sensor.TYPE_GYROSCOPE:
+        sendGyroscope(sensorHandler);
+        sendFusedOrientation(sensorHandler);
+        break;
+      case Sensor.TYPE_LINEAR_ACCELERATION:
+        sendLinearAcceleration(sensorHandler);
+        break;
+      case Sensor.TYPE_ROTATION_VECTOR:
+        sendRotationVector(sensorHandler);
+        break;
+      case Sensor.TYPE_GAME_ROTATION_VECTOR:
+        sendGameRotationVector(sensorHandler);
+        break;
+      case Sensor.TYPE_MAGNETIC_FIELD:
+        sendMagneticField(sensorHandler);
+        break;
+      case Sensor.TYPE_PROXIMITY:
+        sendProximity(sensorHandler);
+        break;
+      case Sensor.TYPE_AMBIENT_TEMPERATURE:
+        sendAmbientTemperature(sensorHandler);
+        break;
+      case Sensor.TYPE_LIGHT:
+        sendLight(sensorHandler);
+        break;
+    }
+  }
+
   public void sendDeviceOrientation(SensorHandler sensorHandler) {
-    String msg = "DEVICE_ORIENTATION," + sensorHandler.getDeviceOrientation();
+    if (!streamScheduler.isDue(Stream.DEVICE_ORIENTATION)) return;
+    String orientation = sensorHandler.getDeviceOrientation();
+    boolean changed = !Objects.equals(orientation, lastSentDeviceOrientation);
+    if (!deadbandFilter.shouldSend(Stream.DEVICE_ORIENTATION, changed)) return;
+    lastSentDeviceOrientation = orientation;
+
+    String msg = "DEVICE_ORIENTATION," + orientation;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  /** Sends the on-device fused orientation (x, y, z, w) and, optionally, angular velocity. */
+  public void sendFusedOrientation(SensorHandler sensorHandler) {
+    if (!streamScheduler.isDue(Stream.FUSED_ORIENTATION)) return;
+    float[] q = fusedOrientationScratch;
+    float[] w = angularVelocityScratch;
+    if (!sensorHandler.getFusedOrientation(q, w)) return;
+    if (!deadbandFilter.shouldSend(Stream.FUSED_ORIENTATION, q, 4)) return;
+
+    String msg = "FUSED_ORIENTATION," + q[0] + "," + q[1] + "," + q[2] + "," + q[3];
+    if (sendFusedAngularVelocity) {
+      msg += "," + w[0] + "," + w[1] + "," + w[2];
+    }
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  public void sendMotionGesture(MotionGestureRecognizer.Gesture gesture, int value) {
+    if (!streamScheduler.isDue(Stream.MOTION_GESTURE)) return;
+
+    String msg = "MOTION_GESTURE," + gesture + "," + value;
     if (transceiver != null) {
       transceiver.sendData(msg);
     }
   }
 
   public void sendAccelerometer(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_ACCELEROMETER);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.ACCELEROMETER)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_ACCELEROMETER, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.ACCELEROMETER, val, 3)) return;
 
     String msg = "ACCELEROMETER," + val[0] + "," + val[1] + "," + val[2];
     if (transceiver != null) {
@@ -105,8 +322,10 @@ public class CommunicationHandler {
   }
 
   public void sendLinearAcceleration(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_LINEAR_ACCELERATION);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.LINEAR_ACCELERATION)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_LINEAR_ACCELERATION, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.LINEAR_ACCELERATION, val, 3)) return;
 
     String msg = "LINEAR_ACCELERATION," + val[0] + "," + val[1] + "," + val[2];
     if (transceiver != null) {
@@ -115,8 +334,10 @@ public class CommunicationHandler {
   }
 
   public void sendGravity(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GRAVITY);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.GRAVITY)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_GRAVITY, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.GRAVITY, val, 3)) return;
 
     String msg = "GRAVITY," + val[0] + "," + val[1] + "," + val[2];
     if (transceiver != null) {
@@ -125,8 +346,10 @@ public class CommunicationHandler {
   }
 
   public void sendGyroscope(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GYROSCOPE);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.GYROSCOPE)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_GYROSCOPE, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.GYROSCOPE, val, 3)) return;
 
     String msg = "GYROSCOPE," + val[0] + "," + val[1] + "," + val[2];
     if (transceiver != null) {
@@ -135,8 +358,10 @@ public class CommunicationHandler {
   }
 
   public void sendGameRotationVector(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GAME_ROTATION_VECTOR);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.GAME_ROTATION_VECTOR)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_GAME_ROTATION_VECTOR, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.GAME_ROTATION_VECTOR, val, 4)) return;
 
     String msg = "GAME_ROTATION_VECTOR," + val[0] + "," + val[1] + "," + val[2] + "," + val[3];
     if (transceiver != null) {
@@ -145,8 +370,10 @@ public class CommunicationHandler {
   }
 
   public void sendRotationVector(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_ROTATION_VECTOR);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.ROTATION_VECTOR)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_ROTATION_VECTOR, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.ROTATION_VECTOR, val, 4)) return;
 
     String msg = "ROTATION_VECTOR," + val[0] + "," + val[1] + "," + val[2] + "," + val[3];
     if (transceiver != null) {
@@ -155,8 +382,10 @@ public class CommunicationHandler {
   }
 
   public void sendMagneticField(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_MAGNETIC_FIELD);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.MAGNETIC_FIELD)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_MAGNETIC_FIELD, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.MAGNETIC_FIELD, val, 3)) return;
 
     String msg = "MAGNETIC_FIELD," + val[0] + "," + val[1] + "," + val[2];
     if (transceiver != null) {
@@ -165,8 +394,10 @@ public class CommunicationHandler {
   }
 
   public void sendProximity(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_PROXIMITY);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.PROXIMITY)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_PROXIMITY, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.PROXIMITY, val, 1)) return;
 
     String msg = "PROXIMITY," + val[0];
     if (transceiver != null) {
@@ -175,8 +406,10 @@ public class CommunicationHandler {
   }
 
   public void sendAmbientTemperature(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_AMBIENT_TEMPERATURE);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.AMBIENT_TEMPERATURE)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_AMBIENT_TEMPERATURE, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.AMBIENT_TEMPERATURE, val, 1)) return;
 
     String msg = "AMBIENT_TEMPERATURE," + val[0];
     if (transceiver != null) {
@@ -185,8 +418,10 @@ public class CommunicationHandler {
   }
 
   public void sendLight(SensorHandler sensorHandler) {
-    float[] val = sensorHandler.getSensorValues(Sensor.TYPE_LIGHT);
-    if (val == null) return;
+    if (!streamScheduler.isDue(Stream.LIGHT)) return;
+    float[] val = sensorValuesScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_LIGHT, val) == 0) return;
+    if (!deadbandFilter.shouldSend(Stream.LIGHT, val, 1)) return;
 
     String msg = "LIGHT," + val[0];
     if (transceiver != null) {
@@ -194,10 +429,59 @@ public class CommunicationHandler {
     }
   }
 
+  /**
+   * Sends (and drains) buffered samples as SENSOR_BATCH messages. Each sample carries its age in
+   * microseconds relative to the message timestamp, preserving the hardware sample timing. Called
+   * on the sensor callback thread.
+   */
+  public void sendSensorBatch(int sensorType, SampleRingBuffer samples) {
+    Stream stream = Stream.fromSensorType(sensorType);
+    if (stream == null || !streamScheduler.isSubscribed(stream)) {
+      samples.clear();
+      return;
+    }
+
+    long now_ns = SystemClock.elapsedRealtimeNanos();
+    int valuesPerSample = samples.getValuesPerSample();
+    while (samples.size() > 0) {
+      int count = Math.min(samples.size(), MAX_SAMPLES_PER_BATCH);
+      batchBuilder.setLength(0);
+      batchBuilder
+          .append("SENSOR_BATCH,")
+          .append(stream.name())
+          .append(',')
+          .append(count)
+          .append(',')
+          .append(valuesPerSample);
+      for (int k = 0; k < count; k++) {
+        batchBuilder.append(',').append((now_ns - samples.getTimestamp(k)) / 1000);
+        for (int j = 0; j < valuesPerSample; j++) {
+          batchBuilder.append(',').append(samples.getValue(k, j));
+        }
+      }
+      samples.remove(count);
+
+      if (transceiver != null) {
+        transceiver.sendData(batchBuilder.toString());
+      }
+    }
+  }
+
   /** ARCore Pose Messages */
-  public void sendPose(Pose pose) {
+  /**
+   * Sends an ARCore pose, tracked at timestamp_ns (Frame.getTimestamp), or, with pose prediction
+   * enabled, the pose predicted for when it reaches the HMD (see PosePredictor).
+   */
+  public void sendPose(Pose pose, long timestamp_ns, SensorHandler sensorHandler) {
+    if (!streamScheduler.isDue(Stream.ARPOSE)) return;
+
     float[] position = pose.getTranslation(); // x y z
     float[] rotation = pose.getRotationQuaternion(); // x y z w
+    if (posePredictionEnabled) {
+      sendPredictedPose(position, rotation, timestamp_ns, sensorHandler);
+      return;
+    }
+
     String msg =
         "ARPOSE,"
             + position[0]
@@ -212,12 +496,201 @@ public class CommunicationHandler {
             + ","
             + rotation[2]
             + ","
-            + rotation[3];
+            + rotation[3]
+            + ","
+            + timestamp_ns;
     if (transceiver != null) {
       transceiver.sendData(msg);
     }
   }
 
+  private void sendPredictedPose(
+      float[] position, float[] rotation, long timestamp_ns, SensorHandler sensorHandler) {
+    // predict one network trip ahead (half the round-trip time), plus any extra render latency
+    long horizon_ns = roundTripTime_ns / 2 + predictionExtraHorizon_ms * 1_000_000L;
+    long now_ns = SystemClock.elapsedRealtimeNanos();
+
+    float[] gyro = poseGyroScratch;
+    if (sensorHandler.getSensorValues(Sensor.TYPE_GYROSCOPE, gyro) == 0) {
+      gyro[0] = 0;
+      gyro[1] = 0;
+      gyro[2] = 0;
+    }
+    float[] p = predictedPosition;
+    float[] q = predictedRotation;
+    if (!posePredictor.predict(gyro, now_ns + horizon_ns, p, q)) {
+      System.arraycopy(position, 0, p, 0, 3);
+      System.arraycopy(rotation, 0, q, 0, 4);
+    }
+
+    // target timestamp in the same time base as the packet timestamp
+    long target_ms = System.currentTimeMillis() + horizon_ns / 1_000_000L;
+    String msg =
+        "ARPOSE_PREDICTED,"
+            + target_ms
+            + ","
+            + p[0]
+            + ","
+            + p[1]
+            + ","
+            + p[2]
+            + ","
+            + q[0]
+            + ","
+            + q[1]
+            + ","
+            + q[2]
+            + ","
+            + q[3]
+            + ","
+            + position[0]
+            + ","
+            + position[1]
+            + ","
+            + position[2]
+            + ","
+            + rotation[0]
+            + ","
+            + rotation[1]
+            + ","
+            + rotation[2]
+            + ","
+            + rotation[3]
+            + ","
+            + timestamp_ns;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  public void setPosePredictionEnabled(boolean enabled) {
+    posePredictionEnabled = enabled;
+  }
+
+  public boolean isPosePredictionEnabled() {
+    return posePredictionEnabled;
+  }
+
+  /**
+   * Sends a plane (center pose in ARCore world coordinates, extents in m, polygon in the plane's
+   * local x/z coordinates in mm). Large polygons are split across several messages, each carrying
+   * the index of its first vertex.
+   */
+  public void sendPlane(
+      int id,
+      Plane.Type type,
+      float[] translation,
+      float[] rotation,
+      float extentX,
+      float extentZ,
+      FloatBuffer polygon) {
+    int vertexCount = polygon.limit() / 2;
+    int firstVertex = 0;
+    do {
+      int count = Math.min(MAX_PLANE_VERTICES_PER_PACKET, vertexCount - firstVertex);
+      StringBuilder msg = planeBuilder;
+      msg.setLength(0);
+      msg.append("PLANE,").append(id).append(',').append(type);
+      for (int i = 0; i < 3; i++) msg.append(',').append(translation[i]);
+      for (int i = 0; i < 4; i++) msg.append(',').append(rotation[i]);
+      msg.append(',').append(extentX).append(',').append(extentZ);
+      msg.append(',').append(vertexCount).append(',').append(firstVertex);
+      for (int i = firstVertex; i < firstVertex + count; i++) {
+        msg.append(',').append(Math.round(polygon.get(2 * i) * 1000));
+        msg.append(',').append(Math.round(polygon.get(2 * i + 1) * 1000));
+      }
+      if (transceiver != null) {
+        transceiver.sendData(msg.toString());
+      }
+      firstVertex += count;
+    } while (firstVertex < vertexCount);
+  }
+
+  /** Sends that a plane is gone, either merged into another plane (subsumedById) or lost (-1). */
+  public void sendPlaneRemoved(int id, int subsumedById) {
+    String msg = "PLANE_REMOVED," + id + "," + subsumedById;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  /**
+   * Sends the results of a HIT_TEST_BATCH request: per ray either NONE or the hit's trackable type
+   * and ID (plane ID, or -1), pose and distance from the ray origin. Large batches are split across
+   * messages, each carrying the index of its first ray.
+   */
+  public void sendHitTestResults(
+      int requestId, long timestamp_ns, HitResult[] hits, int[] trackableIds, int count) {
+    int firstRay = 0;
+    do {
+      int end = Math.min(firstRay + MAX_HIT_TEST_RESULTS_PER_PACKET, count);
+      StringBuilder msg = hitTestBuilder;
+      msg.setLength(0);
+      msg.append("HIT_TEST_RESULT,").append(requestId).append(',').append(timestamp_ns);
+      msg.append(',').append(count).append(',').append(firstRay);
+      for (int i = firstRay; i < end; i++) {
+        HitResult hit = hits[i];
+        if (hit == null) {
+          msg.append(",NONE");
+          continue;
+        }
+        Trackable trackable = hit.getTrackable();
+        String type =
+            trackable instanceof Plane
+                ? "PLANE"
+                : trackable instanceof DepthPoint ? "DEPTH_POINT" : "POINT";
+        Pose hitPose = hit.getHitPose();
+        msg.append(',').append(type).append(',').append(trackableIds[i]);
+        msg.append(',').append(hitPose.tx()).append(',').append(hitPose.ty());
+        msg.append(',').append(hitPose.tz()).append(',').append(hitPose.qx());
+        msg.append(',').append(hitPose.qy()).append(',').append(hitPose.qz());
+        msg.append(',').append(hitPose.qw()).append(',').append(hit.getDistance());
+      }
+      if (transceiver != null) {
+        transceiver.sendData(msg.toString());
+      }
+      firstRay = end;
+    } while (firstRay < count);
+  }
+
+  /**
+   * Sends one fragment of an encoded depth frame (see DepthStreamer), base64-encoded. frameInfo
+   * holds the frame's metadata, repeated in every fragment.
+   */
+  public void sendDepthFragment(
+      int frameId,
+      int fragmentIndex,
+      int fragmentCount,
+      String frameInfo,
+      byte[] data,
+      int offset,
+      int length) {
+    ByteBuffer chunk = Base64.getEncoder().encode(ByteBuffer.wrap(data, offset, length));
+    String msg =
+        "DEPTH,"
+            + frameId
+            + ","
+            + fragmentIndex
+            + ","
+            + fragmentCount
+            + ","
+            + frameInfo
+            + ","
+            + new String(chunk.array(), 0, chunk.limit(), StandardCharsets.US_ASCII);
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  /** Connection Messages */
+  private void sendPing() {
+    // the HMD echoes the payload back in a PONG message
+    String msg = "PING," + SystemClock.elapsedRealtimeNanos();
+    if (transceiver != null && transceiver.isRunning()) {
+      transceiver.sendData(msg);
+    }
+  }
+
   /** Touch Messages */
   public void sendTouchDown(Touch touch) {
     String msg =
@@ -265,9 +738,28 @@ public class CommunicationHandler {
     }
   }
 
+  /** Sends that a touch ended without being lifted (gesture cancelled, or a missed up event). */
+  public void sendTouchCancel(Touch touch) {
+    String msg =
+        "TOUCH_CANCEL,"
+            + touch.ID
+            + ","
+            + touch.positionX
+            + ","
+            + touch.positionY
+            + ","
+            + touch.size
+            + ","
+            + touch.pressure
+            + ",0,0,"
+            + touch.toolType;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
   public void sendTouchMove(Touch touch) {
-    if (System.currentTimeMillis() - timeOfLastMsg_touchMove_ms > msgRate_touchMove_ms) {
-      timeOfLastMsg_touchMove_ms = System.currentTimeMillis();
+    if (streamScheduler.isDue(Stream.TOUCH_MOVE)) {
       String msg =
           "TOUCH_MOVE,"
               + touch.ID
@@ -291,6 +783,177 @@ public class CommunicationHandler {
     }
   }
 
+  public void setTouchFramesEnabled(boolean enabled) {
+    touchFramesEnabled = enabled;
+  }
+
+  public boolean isTouchFramesEnabled() {
+    return touchFramesEnabled;
+  }
+
+  /**
+   * Sends all pointers of a MotionEvent, including the historical samples batched into it, in one
+   * message: the pointer IDs and tool types, then per sample (oldest first) its event time in ns
+   * and x, y, pressure, size of each pointer. Positions are raw (screen) coordinates like
+   * TOUCH_MOVE. Frames follow the TOUCH_MOVE subscription but not its rate, since a skipped frame
+   * would lose all of its samples.
+   */
+  public void sendTouchFrame(MotionEvent event) {
+    if (!streamScheduler.isSubscribed(Stream.TOUCH_MOVE)) return;
+    int pointerCount = event.getPointerCount();
+    int historySize = event.getHistorySize();
+    StringBuilder msg = touchFrameBuilder;
+    msg.setLength(0);
+    msg.append("TOUCH_FRAME,").append(pointerCount).append(',').append(historySize + 1);
+    for (int p = 0; p < pointerCount; p++) {
+      msg.append(',').append(event.getPointerId(p)).append(',').append(event.getToolType(p));
+    }
+    for (int h = 0; h <= historySize; h++) {
+      boolean current = h == historySize;
+      msg.append(',').append(getEventTime_ns(event, current ? -1 : h));
+      for (int p = 0; p < pointerCount; p++) {
+        // historical samples are only available in view coordinates, which are offset from raw
+        // coordinates by the same amount within one event
+        float offsetX = event.getRawX(p) - event.getX(p);
+        float offsetY = event.getRawY(p) - event.getY(p);
+        msg.append(',')
+            .append(offsetX + (current ? event.getX(p) : event.getHistoricalX(p, h)))
+            .append(',')
+            .append(offsetY + (current ? event.getY(p) : event.getHistoricalY(p, h)))
+            .append(',')
+            .append(current ? event.getPressure(p) : event.getHistoricalPressure(p, h))
+            .append(',')
+            .append(current ? event.getSize(p) : event.getHistoricalSize(p, h));
+      }
+    }
+    if (transceiver != null) {
+      transceiver.sendData(msg.toString());
+    }
+  }
+
+  public boolean isTouchPredictionEnabled() {
+    return touchPredictionEnabled;
+  }
+
+  /**
+   * Sends the touch positions predicted for when they reach the HMD (half the round-trip time plus
+   * any extra horizon ahead of the latest touch event), with the target timestamp. Predictions are
+   * only sent while TOUCH_MOVE is subscribed.
+   */
+  public void sendTouchPrediction(TouchPredictor touchPredictor) {
+    if (!streamScheduler.isSubscribed(Stream.TOUCH_MOVE)) return;
+    if (!streamScheduler.isDue(Stream.TOUCH_PREDICTED)) return;
+    long horizon_ns = roundTripTime_ns / 2 + touchPredictionExtraHorizon_ms * 1_000_000L;
+    long target_ns =
+        touchPredictor.getLatestEventTime_ns()
+            + Math.min(horizon_ns, TouchPredictor.MAX_HORIZON_NS);
+    int count = touchPredictor.predict(target_ns, predictedTouchIds, predictedTouchPositions);
+    if (count == 0) return;
+
+    // target timestamp moved from the event time base (uptime) to the packet timestamp's
+    long target_ms =
+        System.currentTimeMillis() + target_ns / 1_000_000L - SystemClock.uptimeMillis();
+    StringBuilder msg = touchFrameBuilder;
+    msg.setLength(0);
+    msg.append("TOUCH_PREDICTED,").append(target_ms).append(',').append(count);
+    for (int i = 0; i < count; i++) {
+      msg.append(',').append(predictedTouchIds[i]);
+      msg.append(',').append(predictedTouchPositions[2 * i]);
+      msg.append(',').append(predictedTouchPositions[2 * i + 1]);
+    }
+    if (transceiver != null) {
+      transceiver.sendData(msg.toString());
+    }
+  }
+
+  public boolean isStylusEnabled() {
+    return stylusEnabled;
+  }
+
+  /**
+   * Sends a stylus pointer's samples of a contact (STYLUS) or hover (STYLUS_HOVER) event, including
+   * the historical ones: per sample its event time in ns, x, y (raw coordinates), pressure, tilt,
+   * orientation (rad) and distance. Moves are rate-limited per stream; the other actions are always
+   * sent.
+   */
+  public void sendStylus(MotionEvent event, int pointerIndex, boolean hover) {
+    String action;
+    switch (event.getActionMasked()) {
+      case MotionEvent.ACTION_DOWN:
+        action = "DOWN";
+        break;
+      case MotionEvent.ACTION_POINTER_DOWN:
+        // only the pointer at the action index went down
+        action = event.getActionIndex() == pointerIndex ? "DOWN" : "MOVE";
+        break;
+      case MotionEvent.ACTION_UP:
+        action = "UP";
+        break;
+      case MotionEvent.ACTION_POINTER_UP:
+        action = event.getActionIndex() == pointerIndex ? "UP" : "MOVE";
+        break;
+      case MotionEvent.ACTION_CANCEL:
+        action = "CANCEL";
+        break;
+      case MotionEvent.ACTION_HOVER_ENTER:
+        action = "ENTER";
+        break;
+      case MotionEvent.ACTION_HOVER_EXIT:
+        action = "EXIT";
+        break;
+      default:
+        action = "MOVE";
+        break;
+    }
+    Stream stream = hover ? Stream.STYLUS_HOVER : Stream.STYLUS;
+    if (!streamScheduler.isSubscribed(stream)) return;
+    if (action.equals("MOVE") && !streamScheduler.isDue(stream)) return;
+
+    int historySize = event.getHistorySize();
+    float offsetX = event.getRawX(pointerIndex) - event.getX(pointerIndex);
+    float offsetY = event.getRawY(pointerIndex) - event.getY(pointerIndex);
+    String msg;
+    synchronized (stylusBuilder) {
+      StringBuilder b = stylusBuilder;
+      b.setLength(0);
+      b.append(stream).append(',').append(event.getPointerId(pointerIndex));
+      b.append(',').append(event.getToolType(pointerIndex)).append(',').append(action);
+      b.append(',').append(event.getButtonState()).append(',').append(historySize + 1);
+      for (int h = 0; h <= historySize; h++) {
+        boolean current = h == historySize;
+        int pos = current ? -1 : h;
+        b.append(',').append(getEventTime_ns(event, pos));
+        b.append(',').append(offsetX + stylusAxis(event, MotionEvent.AXIS_X, pointerIndex, pos));
+        b.append(',').append(offsetY + stylusAxis(event, MotionEvent.AXIS_Y, pointerIndex, pos));
+        b.append(',').append(stylusAxis(event, MotionEvent.AXIS_PRESSURE, pointerIndex, pos));
+        b.append(',').append(stylusAxis(event, MotionEvent.AXIS_TILT, pointerIndex, pos));
+        b.append(',').append(stylusAxis(event, MotionEvent.AXIS_ORIENTATION, pointerIndex, pos));
+        b.append(',').append(stylusAxis(event, MotionEvent.AXIS_DISTANCE, pointerIndex, pos));
+      }
+      msg = b.toString();
+    }
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  private static float stylusAxis(MotionEvent event, int axis, int pointerIndex, int historyPos) {
+    return historyPos < 0
+        ? event.getAxisValue(axis, pointerIndex)
+        : event.getHistoricalAxisValue(axis, pointerIndex, historyPos);
+  }
+
+  /** Event time of a historical sample (or of the event itself, for -1) in ns (uptime base). */
+  static long getEventTime_ns(MotionEvent event, int historyPos) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+      return historyPos < 0
+          ? event.getEventTimeNanos()
+          : event.getHistoricalEventTimeNanos(historyPos);
+    }
+    return (historyPos < 0 ? event.getEventTime() : event.getHistoricalEventTime(historyPos))
+        * 1_000_000L;
+  }
+
   public void sendTap(int pointerID, int tapCount) {
     String msg = "TAP," + pointerID + "," + tapCount;
     if (transceiver != null) {
@@ -320,7 +983,51 @@ public class CommunicationHandler {
   }
 
   public void sendFling(int pointerID, float velocityX, float velocityY) {
-    String msg = "FLING," + velocityX + "," + velocityY;
+    String msg = "FLING," + velocityX + "," + velocityY + "," + pointerID;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  /**
+   * Sends a ROTATE or PAN gesture event: the focus point (raw screen coordinates) and the
+   * translation, scale and angle (degrees, clockwise) since the gesture started.
+   */
+  public void sendTransformGesture(
+      MultiTouchGestureRecognizer.Gesture gesture,
+      MultiTouchGestureRecognizer.Phase phase,
+      int pointerCount,
+      float focusX,
+      float focusY,
+      float translationX,
+      float translationY,
+      float scale,
+      float angle_deg) {
+    String msg =
+        gesture
+            + ","
+            + phase
+            + ","
+            + pointerCount
+            + ","
+            + focusX
+            + ","
+            + focusY
+            + ","
+            + translationX
+            + ","
+            + translationY
+            + ","
+            + scale
+            + ","
+            + angle_deg;
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  public void sendSwipe(int pointerCount, float velocityX, float velocityY) {
+    String msg = "SWIPE_N," + pointerCount + "," + velocityX + "," + velocityY;
     if (transceiver != null) {
       transceiver.sendData(msg);
     }
@@ -350,8 +1057,7 @@ public class CommunicationHandler {
   /** Device Information Messages */
   public void sendDeviceInfo() {
 
-    if (System.currentTimeMillis() - timeOfLastMsg_DeviceInfo_ms > msgRate_DeviceInfo_ms) {
-      timeOfLastMsg_DeviceInfo_ms = System.currentTimeMillis();
+    if (streamScheduler.isDue(Stream.DEVICE_INFO)) {
 
       // Get device model
       String modelName = Build.MODEL;
@@ -392,7 +1098,42 @@ public class CommunicationHandler {
     }
   }
 
+  public void sendQualityTier(BudgetController budgetController) {
+    String msg =
+        "QUALITY_TIER,"
+            + budgetController.getTier()
+            + ","
+            + (budgetController.isPinned() ? 1 : 0)
+            + ","
+            + budgetController.getThermalStatus()
+            + ","
+            + budgetController.getBatteryPercent()
+            + ","
+            + (budgetController.isCharging() ? 1 : 0);
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
+  /** Packs messages into shared datagrams while the HMD asked for it or the relay is on. */
+  private void updatePacking() {
+    if (transceiver != null) {
+      transceiver.setPackingEnabled(packingRequested || watchRelay.isEnabled());
+    }
+  }
+
+  /** Relay Messages */
+  public void sendRelayed(int subDeviceId, long timestamp_ms, String message) {
+    if (transceiver != null) {
+      transceiver.sendData(timestamp_ms, "SUB," + subDeviceId + "," + message);
+    }
+  }
+
   /** Receive Messages */
+  private static boolean isStreamName(String name) {
+    return !name.isEmpty() && Character.isLetter(name.charAt(0));
+  }
+
   public void parseReceivedMessage(String message) {
     String[] messageParts = message.split(",");
 
@@ -416,8 +1157,22 @@ public class CommunicationHandler {
           resetHeartbeatTimer.schedule(resetHeartbeatTask, heartbeatThreshold_ms);
           break;
 
+        case "PONG":
+          // PONG,<payload of the PING>
+          if (messageParts.length < 2) break;
+          try {
+            long rtt_ns = SystemClock.elapsedRealtimeNanos() - Long.parseLong(messageParts[1]);
+            if (rtt_ns < 0) break;
+            long smoothed = roundTripTime_ns;
+            roundTripTime_ns = smoothed == 0 ? rtt_ns : smoothed + (rtt_ns - smoothed) / 8;
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid PONG message: " + message);
+          }
+          break;
+
         case "WHOAREYOU":
           sendDeviceInfo();
+          if (budgetController != null) sendQualityTier(budgetController);
           break;
 
         case "HAPTICS_CLICK":
@@ -443,6 +1198,302 @@ public class CommunicationHandler {
           if (amplitude < 0 || amplitude > 255) break;
           vibrator.vibrate(VibrationEffect.createOneShot(millis,amplitude));
           break;
+
+        case "SUBSCRIBE":
+        case "UNSUBSCRIBE":
+          // SUBSCRIBE,<stream | ALL>[,<rate (Hz)>][,<stream>[,<rate (Hz)>]]...
+          // UNSUBSCRIBE,<stream | ALL>[,<stream>]...
+          if (messageParts.length < 2) break;
+          {
+            // parse the whole message first, so a malformed one changes nothing
+            boolean subscribe = header.equals("SUBSCRIBE");
+            boolean[] selected = new boolean[Stream.values().length];
+            float[] rates_hz = new float[selected.length];
+            Arrays.fill(rates_hz, Float.NaN);
+            boolean fusedOrientationNamed = false;
+            try {
+              Stream stream = null;
+              for (int i = 1; i < messageParts.length; i++) {
+                String part = messageParts[i];
+                if (subscribe && stream != null && !isStreamName(part)) {
+                  // rate of the preceding stream
+                  rates_hz[stream.ordinal()] = Float.parseFloat(part);
+                  stream = null;
+                  continue;
+                }
+                if (part.equals("ALL")) {
+                  Arrays.fill(selected, true);
+                  stream = null;
+                  continue;
+                }
+                stream = Stream.valueOf(part);
+                selected[stream.ordinal()] = true;
+                if (stream == Stream.FUSED_ORIENTATION) fusedOrientationNamed = true;
+              }
+            } catch (IllegalArgumentException e) {
+              Log.e(TAG, "Invalid " + header + " message: " + message);
+              break;
+            }
+
+            for (Stream stream : Stream.values()) {
+              if (!selected[stream.ordinal()]) continue;
+              streamScheduler.setSubscribed(stream, subscribe);
+              float rate_hz = rates_hz[stream.ordinal()];
+              if (!Float.isNaN(rate_hz)) streamScheduler.setRate(stream, rate_hz);
+            }
+            if (commandListener != null) {
+              if (subscribe && fusedOrientationNamed) {
+                commandListener.onFusedOrientationSubscribed();
+              }
+              commandListener.onSubscriptionsChanged();
+            }
+          }
+          break;
+
+        case "SET_RATE":
+          // SET_RATE,<stream>,<rate (Hz)>[,<phase (ms)>]
+          if (messageParts.length < 3) break;
+          try {
+            Stream stream = Stream.valueOf(messageParts[1]);
+            streamScheduler.setRate(stream, Float.parseFloat(messageParts[2]));
+            if (messageParts.length > 3) {
+              streamScheduler.setPhase(stream, Float.parseFloat(messageParts[3]));
+            }
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_RATE message: " + message);
+          }
+          break;
+
+        case "SET_BATCHING":
+          // SET_BATCHING,<max report latency (ms)>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetSensorBatching(Integer.parseInt(messageParts[1]));
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_BATCHING message: " + message);
+          }
+          break;
+
+        case "SET_LOSSLESS":
+          // SET_LOSSLESS,<stream>,<1 (on) | 0 (off)>[,<drain interval (ms)>]
+          if (messageParts.length < 3 || commandListener == null) break;
+          try {
+            Stream stream = Stream.valueOf(messageParts[1]);
+            if (stream.sensorType == Stream.NO_SENSOR) break;
+            long drainInterval_ms = messageParts.length > 3 ? Long.parseLong(messageParts[3]) : 0;
+            commandListener.onSetLossless(
+                stream, Integer.parseInt(messageParts[2]) != 0, drainInterval_ms);
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_LOSSLESS message: " + message);
+          }
+          break;
+
+        case "SET_FUSION":
+          // SET_FUSION,<1 (on) | 0 (off)>[,<use magnetometer (1|0)>[,<angular velocity (1|0)>
+          //     [,<gain>]]]
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            boolean enabled = Integer.parseInt(messageParts[1]) != 0;
+            boolean useMagnetometer =
+                messageParts.length > 2 && Integer.parseInt(messageParts[2]) != 0;
+            if (messageParts.length > 3) {
+              sendFusedAngularVelocity = Integer.parseInt(messageParts[3]) != 0;
+            }
+            float gain = messageParts.length > 4 ? Float.parseFloat(messageParts[4]) : 0;
+            commandListener.onSetFusion(enabled, useMagnetometer, gain);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_FUSION message: " + message);
+          }
+          break;
+
+        case "SET_MOTION_GESTURES":
+          // SET_MOTION_GESTURES,<1 (on) | 0 (off)>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetMotionGestures(Integer.parseInt(messageParts[1]) != 0);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_MOTION_GESTURES message: " + message);
+          }
+          break;
+
+        case "SET_PREDICTION":
+          // SET_PREDICTION,<1 (on) | 0 (off)>[,<extra horizon (ms)>]
+          if (messageParts.length < 2) break;
+          try {
+            if (messageParts.length > 2) {
+              predictionExtraHorizon_ms = Long.parseLong(messageParts[2]);
+            }
+            posePredictionEnabled = Integer.parseInt(messageParts[1]) != 0;
+
+            // pose prediction reads the gyroscope
+            if (commandListener != null) commandListener.onSubscriptionsChanged();
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_PREDICTION message: " + message);
+          }
+          break;
+
+        case "SET_TOUCH_FRAMES":
+          // SET_TOUCH_FRAMES,<1 (on) | 0 (off)>
+          if (messageParts.length < 2) break;
+          try {
+            touchFramesEnabled = Integer.parseInt(messageParts[1]) != 0;
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_TOUCH_FRAMES message: " + message);
+          }
+          break;
+
+        case "SET_LOW_LATENCY_TOUCH":
+          // SET_LOW_LATENCY_TOUCH,<1 (on) | 0 (off)>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetLowLatencyTouch(Integer.parseInt(messageParts[1]) != 0);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_LOW_LATENCY_TOUCH message: " + message);
+          }
+          break;
+
+        case "SET_STYLUS":
+          // SET_STYLUS,<1 (on) | 0 (off)>
+          if (messageParts.length < 2) break;
+          try {
+            stylusEnabled = Integer.parseInt(messageParts[1]) != 0;
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_STYLUS message: " + message);
+          }
+          break;
+
+        case "SET_TOUCH_PREDICTION":
+          // SET_TOUCH_PREDICTION,<1 (on) | 0 (off)>[,<extra horizon (ms)>]
+          if (messageParts.length < 2) break;
+          try {
+            if (messageParts.length > 2) {
+              touchPredictionExtraHorizon_ms = Long.parseLong(messageParts[2]);
+            }
+            touchPredictionEnabled = Integer.parseInt(messageParts[1]) != 0;
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_TOUCH_PREDICTION message: " + message);
+          }
+          break;
+
+        case "SET_ARCORE_PROFILE":
+          // SET_ARCORE_PROFILE,<POSE_ONLY | FULL>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetARCoreProfile(ARCoreProfile.valueOf(messageParts[1]));
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_ARCORE_PROFILE message: " + message);
+          }
+          break;
+
+        case "SET_PLANES":
+          // SET_PLANES,<1 (on) | 0 (off)>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetPlaneStreaming(Integer.parseInt(messageParts[1]) != 0);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_PLANES message: " + message);
+          }
+          break;
+
+        case "SET_DEPTH":
+          // SET_DEPTH,<1 (on) | 0 (off)>[,<step>[,<roi x>,<roi y>,<roi width>,<roi height>]]
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            int step = messageParts.length > 2 ? Integer.parseInt(messageParts[2]) : 0;
+            float[] regionOfInterest = null;
+            if (messageParts.length > 6) {
+              regionOfInterest = new float[4];
+              for (int i = 0; i < 4; i++) {
+                regionOfInterest[i] = Float.parseFloat(messageParts[3 + i]);
+              }
+            }
+            commandListener.onSetDepthStreaming(
+                Integer.parseInt(messageParts[1]) != 0, step, regionOfInterest);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_DEPTH message: " + message);
+          }
+          break;
+
+        case "HIT_TEST_BATCH":
+          // HIT_TEST_BATCH,<request id>,<ray count>,<origin x>,<origin y>,<origin z>,
+          //                <direction x>,<direction y>,<direction z>,...
+          if (messageParts.length < 3 || commandListener == null) break;
+          try {
+            int requestId = Integer.parseInt(messageParts[1]);
+            int rayCount = Integer.parseInt(messageParts[2]);
+            if (rayCount < 0
+                || rayCount > HitTester.MAX_RAYS
+                || messageParts.length < 3 + 6 * rayCount) {
+              Log.e(TAG, "Invalid HIT_TEST_BATCH message: " + message);
+              break;
+            }
+            float[] rays = new float[6 * rayCount];
+            for (int i = 0; i < rays.length; i++) {
+              rays[i] = Float.parseFloat(messageParts[3 + i]);
+            }
+            commandListener.onHitTestBatch(requestId, rays);
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid HIT_TEST_BATCH message: " + message);
+          }
+          break;
+
+        case "SET_RELAY":
+          // SET_RELAY,<1 (on) | 0 (off)>
+          if (messageParts.length < 2) break;
+          try {
+            watchRelay.setEnabled(Integer.parseInt(messageParts[1]) != 0);
+            updatePacking();
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_RELAY message: " + message);
+          }
+          break;
+
+        case "SET_PACKING":
+          // SET_PACKING,<1 (on) | 0 (off)>
+          if (messageParts.length < 2) break;
+          try {
+            packingRequested = Integer.parseInt(messageParts[1]) != 0;
+            updatePacking();
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_PACKING message: " + message);
+          }
+          break;
+
+        case "SUB":
+          // SUB,<sub-device ID>,<command for the relayed device>
+          if (messageParts.length < 3) break;
+          try {
+            int commandStart = message.indexOf(',', header.length() + 1) + 1;
+            watchRelay.forward(Integer.parseInt(messageParts[1]), message.substring(commandStart));
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SUB message: " + message);
+          }
+          break;
+
+        case "SET_BUDGET":
+          // SET_BUDGET,<AUTO | HIGH | MEDIUM | LOW | MINIMAL>
+          if (messageParts.length < 2 || budgetController == null) break;
+          try {
+            budgetController.setPinnedTier(
+                messageParts[1].equals("AUTO") ? null : QualityTier.valueOf(messageParts[1]));
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_BUDGET message: " + message);
+          }
+          break;
+
+        case "SET_DEADBAND":
+          // SET_DEADBAND,<stream>,<threshold>[,<keepalive (ms)>]
+          if (messageParts.length < 3) break;
+          try {
+            Stream stream = Stream.valueOf(messageParts[1]);
+            deadbandFilter.setThreshold(stream, Float.parseFloat(messageParts[2]));
+            if (messageParts.length > 3) {
+              deadbandFilter.setKeepalivePeriod(stream, Long.parseLong(messageParts[3]));
+            }
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_DEADBAND message: " + message);
+          }
+          break;
       }
     }
   }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import android.os.SystemClock;
+
+/**
+ * Change-detection filter for slowly changing streams. A value is only sent if it differs from the
+ * last sent value by more than the stream's threshold (in any component), or if the stream's
+ * keepalive period has elapsed, so the receiver can tell "unchanged" from "lost".
+ */
+public class DeadbandFilter {
+  public static final float DISABLED = -1;
+  private static final int MAX_VALUES = 4;
+
+  private final float[] threshold = new float[Stream.COUNT];
+  private final long[] keepalivePeriod_ns = new long[Stream.COUNT];
+  private final float[][] lastSentValues = new float[Stream.COUNT][MAX_VALUES];
+  private final long[] timeOfLastSend_ns = new long[Stream.COUNT];
+  private final boolean[] hasSent = new boolean[Stream.COUNT];
+
+  public DeadbandFilter() {
+    for (int i = 0; i < Stream.COUNT; i++) {
+      threshold[i] = DISABLED;
+      keepalivePeriod_ns[i] = 1_000_000_000L;
+    }
+
+    // thresholds are in the sensor's units
+    setThreshold(Stream.PROXIMITY, 0);
+    setThreshold(Stream.LIGHT, 5f); // lx
+    setThreshold(Stream.AMBIENT_TEMPERATURE, 0.1f); // degrees C
+    setThreshold(Stream.GRAVITY, 0.05f); // m/s^2
+    setThreshold(Stream.DEVICE_ORIENTATION, 0);
+  }
+
+  /** Returns true (and records the values as sent) if the values should be sent now. */
+  public boolean shouldSend(Stream stream, float[] values, int count) {
+    return shouldSend(stream, values, count, SystemClock.elapsedRealtimeNanos());
+  }
+
+  public synchronized boolean shouldSend(Stream stream, float[] values, int count, long now_ns) {
+    int i = stream.ordinal();
+    if (threshold[i] < 0) return true;
+    count = Math.min(count, MAX_VALUES);
+
+    boolean changed = false;
+    float[] last = lastSentValues[i];
+    for (int j = 0; j < count; j++) {
+      if (Math.abs(values[j] - last[j]) > threshold[i]) {
+        changed = true;
+        break;
+      }
+    }
+    if (!passes(i, changed, now_ns)) return false;
+
+    System.arraycopy(values, 0, last, 0, count);
+    return true;
+  }
+
+  /** Variant for non-numeric streams (e.g. DEVICE_ORIENTATION), where the caller detects changes. */
+  public boolean shouldSend(Stream stream, boolean changed) {
+    return shouldSend(stream, changed, SystemClock.elapsedRealtimeNanos());
+  }
+
+  public synchronized boolean shouldSend(Stream stream, boolean changed, long now_ns) {
+    int i = stream.ordinal();
+    if (threshold[i] < 0) return true;
+    return passes(i, changed, now_ns);
+  }
+
+  private boolean passes(int i, boolean changed, long now_ns) {
+    boolean keepalive = now_ns - timeOfLastSend_ns[i] >= keepalivePeriod_ns[i];
+    if (hasSent[i] && !changed && !keepalive) return false;
+
+    hasSent[i] = true;
+    timeOfLastSend_ns[i] = now_ns;
+    return true;
+  }
+
+  /** Sets the deadband of a stream. DISABLED (or below) sends every value. */
+  public synchronized void setThreshold(Stream stream, float value) {
+    int i = stream.ordinal();
+    threshold[i] = value < 0 ? DISABLED : value;
+    hasSent[i] = false;
+  }
+
+  /** Sets how often an unchanged value is re-sent. */
+  public synchronized void setKeepalivePeriod(Stream stream, long period_ms) {
+    keepalivePeriod_ns[stream.ordinal()] = period_ms * 1_000_000L;
+  }
+
+  public synchronized float getThreshold(Stream stream) {
+    return threshold[stream.ordinal()];
+  }
+}
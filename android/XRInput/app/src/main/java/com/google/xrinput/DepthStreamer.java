@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import android.media.Image;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import com.google.ar.core.Frame;
+import com.google.ar.core.exceptions.DeadlineExceededException;
+import com.google.ar.core.exceptions.NotTrackingException;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+import com.google.ar.core.exceptions.ResourceExhaustedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streams the ARCore depth map to the HMD (e.g. for occlusion). The GL thread only copies the region
+ * of interest out of the depth image; downsampling, compression and sending happen on a worker
+ * thread. A frame is skipped while the previous one is still being encoded.
+ *
+ * <p>Encoding: the downsampled depth values (mm, 0 = unknown) are predicted from their left
+ * neighbour (or the value above, for the first column), and the zigzag-mapped residuals are Rice
+ * coded in blocks of 64 values, each block starting with its 5-bit Rice parameter. Residuals whose
+ * quotient reaches 24 are escaped (24 one bits, then the 17-bit value).
+ */
+public class DepthStreamer {
+  private static final int RICE_BLOCK_SIZE = 64;
+  private static final int RICE_PARAMETER_BITS = 5;
+  private static final int RICE_ESCAPE_QUOTIENT = 24;
+  private static final int RICE_ESCAPE_BITS = 17;
+  private static final int MAX_BYTES_PER_FRAGMENT = 900;
+
+  private final CommunicationHandler communicationHandler;
+  private final HandlerThread workerThread;
+  private final Handler workerHandler;
+  private volatile boolean enabled = false;
+  private volatile boolean depthModeEnabled = false;
+  private volatile boolean encoding = false;
+
+  // configuration (step: downsampling factor; region of interest: normalized image coordinates)
+  private volatile int step = 2;
+  private volatile float roiX = 0, roiY = 0, roiWidth = 1, roiHeight = 1;
+
+  // current frame, written by the GL thread while !encoding, then read by the worker thread
+  private short[] region = new short[0];
+  private int sourceWidth, sourceHeight;
+  private int regionX, regionY, regionWidth, regionHeight, regionStep;
+  private long timestamp_ns;
+  private int frameId = 0;
+
+  // worker thread only
+  private short[] downsampled = new short[0];
+  private byte[] encoded = new byte[0];
+  private int encodedLength;
+  private long bitBuffer;
+  private int bitCount;
+
+  public DepthStreamer(CommunicationHandler communicationHandler) {
+    this.communicationHandler = communicationHandler;
+    workerThread = new HandlerThread("XRInputDepth", Process.THREAD_PRIORITY_BACKGROUND);
+    workerThread.start();
+    workerHandler = new Handler(workerThread.getLooper());
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Records whether the session is configured with DepthMode.AUTOMATIC; depth maps are only
+   * acquired while it is (called from configureSession).
+   */
+  public void setDepthModeEnabled(boolean depthModeEnabled) {
+    this.depthModeEnabled = depthModeEnabled;
+  }
+
+  /** Sets the downsampling factor (each sent value covers step x step depth pixels). */
+  public void setStep(int step) {
+    this.step = Math.max(1, step);
+  }
+
+  /** Sets the region of interest, in normalized depth image coordinates. */
+  public void setRegionOfInterest(float x, float y, float width, float height) {
+    roiX = Math.max(0, Math.min(1, x));
+    roiY = Math.max(0, Math.min(1, y));
+    roiWidth = Math.max(0, Math.min(1 - roiX, width));
+    roiHeight = Math.max(0, Math.min(1 - roiY, height));
+  }
+
+  public void close() {
+    workerThread.quitSafely();
+  }
+
+  /** Copies the depth map of this frame for sending, if the stream is due (GL thread). */
+  public void update(Frame frame) {
+    if (!enabled || !depthModeEnabled || encoding || !communicationHandler.isRunning()) return;
+    if (!communicationHandler.getStreamScheduler().isDue(Stream.DEPTH)) return;
+
+    Image image;
+    try {
+      image = frame.acquireDepthImage16Bits();
+    } catch (NotYetAvailableException
+        | NotTrackingException
+        | DeadlineExceededException
+        | ResourceExhaustedException e) {
+      return;
+    } catch (IllegalStateException e) {
+      // the depth mode was turned off since the last check
+      return;
+    }
+    try {
+      sourceWidth = image.getWidth();
+      sourceHeight = image.getHeight();
+      regionStep = step;
+      regionX = (int) (roiX * sourceWidth);
+      regionY = (int) (roiY * sourceHeight);
+      regionWidth = Math.min((int) Math.ceil(roiWidth * sourceWidth), sourceWidth - regionX);
+      regionHeight = Math.min((int) Math.ceil(roiHeight * sourceHeight), sourceHeight - regionY);
+      if (regionWidth <= 0 || regionHeight <= 0) return;
+      timestamp_ns = frame.getTimestamp();
+
+      if (region.length < regionWidth * regionHeight) {
+        region = new short[regionWidth * regionHeight];
+      }
+      Image.Plane plane = image.getPlanes()[0];
+      ByteBuffer buffer = plane.getBuffer().order(ByteOrder.LITTLE_ENDIAN);
+      int rowStride = plane.getRowStride();
+      int pixelStride = plane.getPixelStride();
+      for (int y = 0; y < regionHeight; y++) {
+        int offset = (regionY + y) * rowStride + regionX * pixelStride;
+        for (int x = 0; x < regionWidth; x++) {
+          region[y * regionWidth + x] = buffer.getShort(offset + x * pixelStride);
+        }
+      }
+    } finally {
+      image.close();
+    }
+
+    encoding = true;
+    workerHandler.post(encodeAndSendCode);
+  }
+
+  private final Runnable encodeAndSendCode =
+      () -> {
+        try {
+          int width = (regionWidth + regionStep - 1) / regionStep;
+          int height = (regionHeight + regionStep - 1) / regionStep;
+          downsample(width, height);
+          encode(width, height);
+          send(width, height);
+        } finally {
+          encoding = false;
+        }
+      };
+
+  /** Keeps the nearest known depth of each step x step block (conservative for occlusion). */
+  private void downsample(int width, int height) {
+    if (downsampled.length < width * height) downsampled = new short[width * height];
+    for (int by = 0; by < height; by++) {
+      for (int bx = 0; bx < width; bx++) {
+        int nearest = Integer.MAX_VALUE;
+        int yEnd = Math.min((by + 1) * regionStep, regionHeight);
+        int xEnd = Math.min((bx + 1) * regionStep, regionWidth);
+        for (int y = by * regionStep; y < yEnd; y++) {
+          for (int x = bx * regionStep; x < xEnd; x++) {
+            int depth = region[y * regionWidth + x] & 0xFFFF;
+            if (depth != 0 && depth < nearest) nearest = depth;
+          }
+        }
+        downsampled[by * width + bx] = (short) (nearest == Integer.MAX_VALUE ? 0 : nearest);
+      }
+    }
+  }
+
+  private void encode(int width, int height) {
+    int count = width * height;
+    int maxBytes = count * (RICE_ESCAPE_QUOTIENT + RICE_ESCAPE_BITS) / 8 + count / 8 + 16;
+    if (encoded.length < maxBytes) encoded = new byte[maxBytes];
+    encodedLength = 0;
+    bitBuffer = 0;
+    bitCount = 0;
+
+    for (int blockStart = 0; blockStart < count; blockStart += RICE_BLOCK_SIZE) {
+      int blockEnd = Math.min(blockStart + RICE_BLOCK_SIZE, count);
+
+      // pick the Rice parameter from the block's mean residual
+      long sum = 0;
+      for (int i = blockStart; i < blockEnd; i++) sum += residual(i, width);
+      int mean = (int) (sum / (blockEnd - blockStart));
+      int k = mean > 0 ? 31 - Integer.numberOfLeadingZeros(mean) : 0;
+      writeBits(k, RICE_PARAMETER_BITS);
+
+      for (int i = blockStart; i < blockEnd; i++) {
+        int z = residual(i, width);
+        int quotient = z >>> k;
+        if (quotient >= RICE_ESCAPE_QUOTIENT) {
+          writeBits((1 << RICE_ESCAPE_QUOTIENT) - 1, RICE_ESCAPE_QUOTIENT);
+          writeBits(z, RICE_ESCAPE_BITS);
+        } else {
+          // unary quotient (ones, terminated by a zero), then the k low bits
+          writeBits(((1 << quotient) - 1) << 1, quotient + 1);
+          writeBits(z & ((1 << k) - 1), k);
+        }
+      }
+    }
+    if (bitCount > 0) writeBits(0, 8 - bitCount);
+  }
+
+  /** Zigzag-mapped difference between a value and its prediction. */
+  private int residual(int i, int width) {
+    int value = downsampled[i] & 0xFFFF;
+    int prediction;
+    if (i % width > 0) {
+      prediction = downsampled[i - 1] & 0xFFFF;
+    } else if (i >= width) {
+      prediction = downsampled[i - width] & 0xFFFF;
+    } else {
+      prediction = 0;
+    }
+    int r = value - prediction;
+    return (r << 1) ^ (r >> 31);
+  }
+
+  private void writeBits(int value, int count) {
+    if (count == 0) return;
+    bitBuffer = (bitBuffer << count) | (value & ((1L << count) - 1));
+    bitCount += count;
+    while (bitCount >= 8) {
+      bitCount -= 8;
+      encoded[encodedLength++] = (byte) (bitBuffer >>> bitCount);
+    }
+  }
+
+  private void send(int width, int height) {
+    int id = frameId++;
+    String frameInfo =
+        timestamp_ns
+            + ","
+            + sourceWidth
+            + ","
+            + sourceHeight
+            + ","
+            + regionX
+            + ","
+            + regionY
+            + ","
+            + regionStep
+            + ","
+            + width
+            + ","
+            + height;
+    int fragmentCount =
+        Math.max(1, (encodedLength + MAX_BYTES_PER_FRAGMENT - 1) / MAX_BYTES_PER_FRAGMENT);
+    for (int fragment = 0; fragment < fragmentCount; fragment++) {
+      int start = fragment * MAX_BYTES_PER_FRAGMENT;
+      int length = Math.min(MAX_BYTES_PER_FRAGMENT, encodedLength - start);
+      communicationHandler.sendDepthFragment(
+          id, fragment, fragmentCount, frameInfo, encoded, start, length);
+    }
+  }
+}
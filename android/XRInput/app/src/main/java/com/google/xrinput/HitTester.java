@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+import android.util.Log;
+import com.google.ar.core.DepthPoint;
+import com.google.ar.core.Frame;
+import com.google.ar.core.HitResult;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Point;
+import com.google.ar.core.Trackable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Answers HIT_TEST_BATCH requests from the HMD: all rays of a request are hit-tested against the
+ * next ARCore frame and the results are sent back together, so placing content costs one round trip
+ * per frame rather than per ray.
+ *
+ * <p>Requests can be added from any thread; update() must be called from the GL thread, right after
+ * Session.update().
+ */
+public class HitTester {
+  private static final String TAG = HitTester.class.getSimpleName();
+  public static final int MAX_RAYS = 64;
+  private static final int MAX_PENDING_REQUESTS = 8;
+
+  private final CommunicationHandler communicationHandler;
+  private final PlaneStreamer planeStreamer;
+  private final ArrayDeque<Request> pendingRequests = new ArrayDeque<>(); // guarded by this
+
+  // GL thread only
+  private final HitResult[] hits = new HitResult[MAX_RAYS];
+  private final int[] trackableIds = new int[MAX_RAYS];
+
+  private static class Request {
+    final int id;
+    final float[] rays; // origin x, y, z, direction x, y, z per ray, in ARCore world coordinates
+
+    Request(int id, float[] rays) {
+      this.id = id;
+      this.rays = rays;
+    }
+  }
+
+  /** Plane hits are reported with the plane's ID from planeStreamer. */
+  public HitTester(CommunicationHandler communicationHandler, PlaneStreamer planeStreamer) {
+    this.communicationHandler = communicationHandler;
+    this.planeStreamer = planeStreamer;
+  }
+
+  /** Queues a request (6 floats per ray) to be answered on the next frame. */
+  public synchronized void request(int id, float[] rays) {
+    if (pendingRequests.size() >= MAX_PENDING_REQUESTS) {
+      Log.w(TAG, "Too many pending hit test requests, dropping request " + id);
+      return;
+    }
+    pendingRequests.add(new Request(id, rays));
+  }
+
+  private synchronized Request pollRequest() {
+    return pendingRequests.poll();
+  }
+
+  /** Hit-tests all pending requests against this frame and sends their results. */
+  public void update(Frame frame) {
+    Request request;
+    while ((request = pollRequest()) != null) {
+      int rayCount = Math.min(request.rays.length / 6, MAX_RAYS);
+      Arrays.fill(hits, 0, rayCount, null);
+      for (int i = 0; i < rayCount; i++) {
+        // the results are sorted by distance, so keep the nearest usable one
+        for (HitResult hit : frame.hitTest(request.rays, 6 * i, request.rays, 6 * i + 3)) {
+          Trackable trackable = hit.getTrackable();
+          if (trackable instanceof Plane
+              && ((Plane) trackable).isPoseInPolygon(hit.getHitPose())) {
+            trackableIds[i] = planeStreamer.getPlaneId((Plane) trackable);
+          } else if ((trackable instanceof Point
+                  && ((Point) trackable).getOrientationMode()
+                      == Point.OrientationMode.ESTIMATED_SURFACE_NORMAL)
+              || trackable instanceof DepthPoint) {
+            trackableIds[i] = -1;
+          } else {
+            continue;
+          }
+          hits[i] = hit;
+          break;
+        }
+      }
+      if (communicationHandler.isRunning()) {
+        communicationHandler.sendHitTestResults(
+            request.id, frame.getTimestamp(), hits, trackableIds, rayCount);
+      }
+    }
+    Arrays.fill(hits, null);
+  }
+}
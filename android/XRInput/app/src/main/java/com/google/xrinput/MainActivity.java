@@ -27,7 +27,10 @@ import android.opengl.GLSurfaceView;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CompoundButton;
@@ -39,6 +42,8 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Camera;
+import com.google.ar.core.CameraConfig;
+import com.google.ar.core.CameraConfigFilter;
 import com.google.ar.core.Config;
 import com.google.ar.core.Config.InstantPlacementMode;
 import com.google.ar.core.Frame;
@@ -51,10 +56,9 @@ import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
 import com.google.ar.core.examples.java.common.helpers.SnackbarHelper;
 import com.google.ar.core.examples.java.common.helpers.TrackingStateHelper;
-import com.google.ar.core.examples.java.common.samplerender.Framebuffer;
 import com.google.ar.core.examples.java.common.samplerender.SampleRender;
+import com.google.ar.core.examples.java.common.samplerender.Texture;
 import com.google.ar.core.examples.java.common.samplerender.arcore.BackgroundRenderer;
-import com.google.ar.core.examples.java.common.samplerender.arcore.PlaneRenderer;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
@@ -67,6 +71,8 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.List;
 
@@ -75,15 +81,31 @@ import java.util.List;
  * components adapted from hello_ar_java example:
  * https://github.com/google-ar/arcore-android-sdk/tree/master/samples/hello_ar_java
  */
-public class MainActivity extends AppCompatActivity implements SampleRender.Renderer {
+public class MainActivity extends AppCompatActivity
+    implements SampleRender.Renderer, CommunicationHandler.CommandListener {
 
   private static final String TAG = MainActivity.class.getSimpleName();
   private static final Boolean USE_AR_CORE = true;
 
+  // Connection indicator colors (parsed once)
+  private static final int COLOR_NOT_CONNECTED = Color.parseColor("#b5b5b5");
+  private static final int COLOR_SENDING = Color.parseColor("#ffb13d");
+  private static final int COLOR_CONNECTED = Color.parseColor("#59c639");
+  private static final int CONNECTION_STATE_NOT_CONNECTED = 0;
+  private static final int CONNECTION_STATE_SENDING = 1;
+  private static final int CONNECTION_STATE_CONNECTED = 2;
+
   // Main ARCore Variables (NOTE: more below)
   private Session session;
-  private Pose pose;
-  private Frame frame;
+  private volatile Pose pose;
+  private long lastPoseTimestamp_ns = 0; // GL thread only
+  private ARCoreProfile arCoreProfile = ARCoreProfile.POSE_ONLY; // requested by the HMD
+  private boolean arCoreNeeded = true; // false while no subscribed stream uses ARCore (UI thread)
+  private boolean resumed = false; // UI thread
+  private boolean subscriptionsPending = false; // changed while paused, applied on resume
+  private PlaneStreamer planeStreamer;
+  private DepthStreamer depthStreamer;
+  private HitTester hitTester;
 
   // Display Variables
   private TextView connectionStatusText;
@@ -97,14 +119,43 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
   private String hmdIPstring = "192.168.0.1";
   private GradientDrawable connectionIndicator;
 
-  // Thread
-  private Handler handler = new Handler();
-  private Runnable runnableCode;
+  // Display Refresh (decoupled from streaming, views only updated when displayed values change)
+  private final long displayRefreshInterval_ms = 100; // 10 Hz
+  private long localIpRefreshInterval_ns = 1_000_000_000L; // 1 Hz
+  private long timeOfLastLocalIpRefresh_ns = 0;
+  private int displayedConnectionState = -1;
+  private int displayedTapsRemaining = -1;
+  private String displayedDeviceIP;
+  private String displayedHmdIP;
+  private final int[] displayedPosition_hundredths = new int[3];
+  private final int[] displayedEulerAngles_hundredths = new int[3];
+  private final int[] position_hundredths = new int[3];
+  private final int[] eulerAngles_hundredths = new int[3];
+  private boolean forcePoseRefresh = true; // first refresh always shows values
+  private final float[] displayPosition = new float[3];
+  private final float[] displayRotation = new float[4];
+  private final float[] displayEulerAngles = new float[3];
+  private final StringBuilder positionTextBuilder = new StringBuilder(32);
+  private final StringBuilder orientationTextBuilder = new StringBuilder(32);
+  private final StringBuilder connectButtonTextBuilder = new StringBuilder(64);
+
+  // Threads
+  // > UI thread: only observes state to refresh the display, driven by Choreographer
+  private Choreographer.FrameCallback displayRefreshCallback;
+  // > streaming thread: receives sensor callbacks and encodes/sends every sample as it arrives
+  private HandlerThread streamingThread;
+  private Handler streamingHandler;
+  // > GL thread: updates ARCore and sends each new pose as soon as its camera frame is available
+
+  // Power Budget (UI thread)
+  private QualityTier qualityTier = QualityTier.HIGH;
+  private int requestedMaxReportLatency_ms = 0;
 
   // Handlers
   private SensorHandler sensorHandler;
   private TouchHandler touchHandler;
   private CommunicationHandler communicationHandler;
+  private BudgetController budgetController;
   private boolean sendingDataFlag = false;
   private int tapsToStopConnection = 8;
   private int tapsRemainingToStopConnection = tapsToStopConnection;
@@ -126,48 +177,30 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     // Initialize UI
     initUI();
 
+    // Initialize streaming thread
+    initStreamingThread();
+
     // Initialize handlers
     initCommunicationHandler();
     initSensorHandler();
     initTouchHandler();
+    initBudgetController();
 
-    // Define the code block to be executed
-    runnableCode =
-        new Runnable() {
+    // Define the display refresh code block (UI thread, aligned to a display frame)
+    displayRefreshCallback =
+        new Choreographer.FrameCallback() {
           @Override
-          public void run() {
-            updateDisplayInfo();
+          public void doFrame(long frameTimeNanos) {
+            updateDisplayInfo(frameTimeNanos);
 
-            // Polling-based Communication
             if (communicationHandler.isRunning()) {
-
-              // ARCore
-              if (USE_AR_CORE) {
-                if (frame != null
-                    && frame.getCamera().getTrackingState() == TrackingState.TRACKING) {
-                  communicationHandler.sendPose(pose);
-                }
-              }
-
-              // Sensors
-              communicationHandler.sendAccelerometer(sensorHandler);
-              communicationHandler.sendGravity(sensorHandler);
-              communicationHandler.sendGyroscope(sensorHandler);
-              communicationHandler.sendLinearAcceleration(sensorHandler);
-              communicationHandler.sendRotationVector(sensorHandler);
-              communicationHandler.sendGameRotationVector(sensorHandler);
-              communicationHandler.sendMagneticField(sensorHandler);
-              communicationHandler.sendProximity(sensorHandler);
-              communicationHandler.sendAmbientTemperature(sensorHandler);
-              communicationHandler.sendLight(sensorHandler);
-              communicationHandler.sendDeviceOrientation(sensorHandler);
-
               // Check if we should stop communication
               if (tapsRemainingToStopConnection == 0) {
                 sendingDataFlag = false;
                 communicationHandler.closeConnection();
 
                 connectButton.setText(R.string.connect_text);
+                displayedTapsRemaining = -1;
                 connectButton.setClickable(true);
                 connectButton.setEnabled(true);
                 editHMDaddressButton.setClickable(true);
@@ -177,17 +210,23 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
               }
             }
 
-            // Repeat this runnable code block again every 10 ms
-            handler.postDelayed(runnableCode, 10);
+            // Repeat on the first frame after the refresh interval
+            Choreographer.getInstance()
+                .postFrameCallbackDelayed(this, displayRefreshInterval_ms);
           }
         };
 
-    // Start the initial runnable task by posting through the handler
-    handler.post(runnableCode);
+    // Start the initial tasks
+    Choreographer.getInstance().postFrameCallback(displayRefreshCallback);
   }
 
   @Override
   protected void onDestroy() {
+    Choreographer.getInstance().removeFrameCallback(displayRefreshCallback);
+    budgetController.stop();
+    sensorHandler.removeAllSensorListeners();
+    streamingThread.quitSafely();
+    depthStreamer.close();
     ARCoreOnDestroy();
     super.onDestroy();
   }
@@ -195,55 +234,300 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
   @Override
   protected void onResume() {
     super.onResume();
-    ARCoreOnResume();
+    resumed = true;
+    // apply the subscriptions that changed while paused
+    boolean subscriptionsChanged = subscriptionsPending;
+    subscriptionsPending = false;
+    if (subscriptionsChanged) updateARCoreNeeded();
+    if (arCoreNeeded) ARCoreOnResume();
     sensorHandler.resumeAllSensorListeners();
+    if (subscriptionsChanged) applySensorSubscriptions();
   }
 
   @Override
   public void onPause() {
     super.onPause();
+    resumed = false;
     ARCoreOnPause();
     sensorHandler.pauseAllSensorListeners();
   }
 
   /** Initialization Functions */
+  private void initStreamingThread() {
+    // high-priority thread dedicated to streaming, so it does not compete with layout/UI work
+    streamingThread =
+        new HandlerThread("XRInputStreaming", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+    streamingThread.start();
+    streamingHandler = new Handler(streamingThread.getLooper());
+  }
+
   private void initSensorHandler() {
-    sensorHandler = new SensorHandler(this);
+    // sensor callbacks are delivered to the streaming thread
+    sensorHandler = new SensorHandler(this, streamingHandler);
+
+    // send each sample as soon as it arrives
+    sensorHandler.setOnSensorSampleListener(
+        sensorType -> {
+          if (communicationHandler.isRunning()) {
+            communicationHandler.sendSensor(sensorType, sensorHandler);
+          }
+        });
+
+    // in batched or lossless mode, send every buffered sample
+    sensorHandler.setOnSensorBatchListener(
+        (sensorType, samples) -> {
+          if (!communicationHandler.isRunning()) return;
+          communicationHandler.sendSensorBatch(sensorType, samples);
+          if (sensorType == Sensor.TYPE_GRAVITY) {
+            communicationHandler.sendDeviceOrientation(sensorHandler);
+          } else if (sensorType == Sensor.TYPE_GYROSCOPE) {
+            communicationHandler.sendFusedOrientation(sensorHandler);
+          }
+        });
+
+    // send motion gestures recognized on the device
+    sensorHandler.setOnMotionGestureListener(
+        (gesture, value) -> {
+          if (communicationHandler.isRunning()) {
+            communicationHandler.sendMotionGesture(gesture, value);
+          }
+        });
 
     // Motion Sensors
     // https://developer.android.com/develop/sensors-and-location/sensors/sensors_motion
-    sensorHandler.registerSensorListener(Sensor.TYPE_ACCELEROMETER);
-    sensorHandler.registerSensorListener(Sensor.TYPE_GRAVITY);
-    sensorHandler.registerSensorListener(Sensor.TYPE_GYROSCOPE);
-    sensorHandler.registerSensorListener(Sensor.TYPE_LINEAR_ACCELERATION);
-    sensorHandler.registerSensorListener(Sensor.TYPE_ROTATION_VECTOR);
+    registerSensorStream(Stream.ACCELEROMETER);
+    registerSensorStream(Stream.GRAVITY);
+    registerSensorStream(Stream.GYROSCOPE);
+    registerSensorStream(Stream.LINEAR_ACCELERATION);
+    registerSensorStream(Stream.ROTATION_VECTOR);
 
     // Position Sensors
     // https://developer.android.com/develop/sensors-and-location/sensors/sensors_position
-    sensorHandler.registerSensorListener(Sensor.TYPE_GAME_ROTATION_VECTOR);
-    sensorHandler.registerSensorListener(Sensor.TYPE_MAGNETIC_FIELD);
-    sensorHandler.registerSensorListener(Sensor.TYPE_PROXIMITY);
+    registerSensorStream(Stream.GAME_ROTATION_VECTOR);
+    registerSensorStream(Stream.MAGNETIC_FIELD);
+    registerSensorStream(Stream.PROXIMITY);
 
     // Environment Sensors
     // https://developer.android.com/develop/sensors-and-location/sensors/sensors_environment
-    sensorHandler.registerSensorListener(Sensor.TYPE_AMBIENT_TEMPERATURE);
-    sensorHandler.registerSensorListener(Sensor.TYPE_LIGHT);
+    registerSensorStream(Stream.AMBIENT_TEMPERATURE);
+    registerSensorStream(Stream.LIGHT);
+
+    // keep sensor sampling in line with stream rates changed at runtime
+    communicationHandler
+        .getStreamScheduler()
+        .setOnRateChangedListener(
+            (stream, rateHz) -> {
+              if (stream.sensorType == Stream.NO_SENSOR) return;
+              int samplingPeriodUs =
+                  communicationHandler.getStreamScheduler().getSamplingPeriodUs(stream);
+              runOnUiThread(
+                  () -> sensorHandler.setSamplingPeriod(stream.sensorType, samplingPeriodUs));
+            });
+  }
+
+  /** Registers the sensor backing a stream, sampled at the stream's scheduled rate. */
+  private void registerSensorStream(Stream stream) {
+    sensorHandler.registerSensorListener(
+        stream.sensorType, communicationHandler.getStreamScheduler().getSamplingPeriodUs(stream));
   }
 
   private void initTouchHandler() {
-    touchHandler = new TouchHandler(this, communicationHandler);
+    touchHandler = new TouchHandler(this, communicationHandler, streamingThread.getLooper());
 
     // we created a view that lives in front of the display to capture all touch events
     View rootView = findViewById(R.id.touchview);
     rootView.setOnTouchListener(touchHandler);
+    rootView.setOnHoverListener(touchHandler);
 
     // this makes sure that this view lies behind everything and doesn't consume
     // touch events for buttons etc.
     rootView.setTranslationZ(-100f);
   }
 
+  private void initBudgetController() {
+    budgetController = new BudgetController(this);
+    communicationHandler.setBudgetController(budgetController);
+    budgetController.setOnQualityTierChangedListener(this::setQualityTier);
+    budgetController.start();
+  }
+
   private void initCommunicationHandler() {
     communicationHandler =  new CommunicationHandler(MainActivity.this);
+    communicationHandler.setCommandListener(this);
+    planeStreamer = new PlaneStreamer(communicationHandler);
+    depthStreamer = new DepthStreamer(communicationHandler);
+    hitTester = new HitTester(communicationHandler, planeStreamer);
+  }
+
+  /** Downlink Commands */
+  @Override
+  public void onSetSensorBatching(int maxReportLatency_ms) {
+    runOnUiThread(
+        () -> {
+          requestedMaxReportLatency_ms = Math.max(0, maxReportLatency_ms);
+          applySensorBatching();
+        });
+  }
+
+  @Override
+  public void onSetLossless(Stream stream, boolean enabled, long drainInterval_ms) {
+    runOnUiThread(
+        () -> {
+          if (drainInterval_ms > 0) sensorHandler.setLosslessDrainInterval(drainInterval_ms);
+          sensorHandler.setLossless(stream.sensorType, enabled);
+        });
+  }
+
+  @Override
+  public void onSetFusion(boolean enabled, boolean useMagnetometer, float gain) {
+    runOnUiThread(
+        () -> {
+          if (gain > 0) sensorHandler.setFusionGain(gain);
+          sensorHandler.setFusion(enabled, useMagnetometer);
+          applySubscriptions();
+        });
+  }
+
+  @Override
+  public void onFusedOrientationSubscribed() {
+    runOnUiThread(
+        () -> {
+          if (sensorHandler.isFusionEnabled()) return;
+          sensorHandler.setFusion(true, sensorHandler.isFusionUsingMagnetometer());
+          applySubscriptions();
+        });
+  }
+
+  @Override
+  public void onSetMotionGestures(boolean enabled) {
+    sensorHandler.setMotionGesturesEnabled(enabled);
+    runOnUiThread(this::applySubscriptions);
+  }
+
+  @Override
+  public void onSetARCoreProfile(ARCoreProfile profile) {
+    runOnUiThread(() -> setARCoreProfile(profile));
+  }
+
+  @Override
+  public void onSetPlaneStreaming(boolean enabled) {
+    runOnUiThread(() -> setPlaneStreaming(enabled));
+  }
+
+  @Override
+  public void onSetLowLatencyTouch(boolean enabled) {
+    touchHandler.setLowLatencyMode(enabled);
+  }
+
+  @Override
+  public void onSetDepthStreaming(boolean enabled, int step, float[] regionOfInterest) {
+    if (step > 0) {
+      depthStreamer.setStep(step);
+    }
+    if (regionOfInterest != null) {
+      depthStreamer.setRegionOfInterest(
+          regionOfInterest[0], regionOfInterest[1], regionOfInterest[2], regionOfInterest[3]);
+    }
+    runOnUiThread(() -> setDepthStreaming(enabled));
+  }
+
+  @Override
+  public void onHitTestBatch(int requestId, float[] rays) {
+    // answered on the next frame
+    hitTester.request(requestId, rays);
+  }
+
+  @Override
+  public void onSubscriptionsChanged() {
+    runOnUiThread(this::applySubscriptions);
+  }
+
+  /**
+   * Stops streams nobody subscribes to at the source: registers the sensors that subscribed streams
+   * need and unregisters the others, and pauses ARCore while no subscribed stream uses it (UI
+   * thread). While the activity is paused, this is left to onResume().
+   */
+  private void applySubscriptions() {
+    if (!resumed) {
+      subscriptionsPending = true;
+      return;
+    }
+    applySensorSubscriptions();
+    applyARCoreSubscription();
+  }
+
+  private void applySensorSubscriptions() {
+    StreamScheduler scheduler = communicationHandler.getStreamScheduler();
+    for (Stream stream : Stream.values()) {
+      if (stream.sensorType == Stream.NO_SENSOR) continue;
+      boolean needed = scheduler.isSubscribed(stream) || isNeededByDerivedStream(stream.sensorType);
+      boolean registered = sensorHandler.isSensorRegistered(stream.sensorType);
+      if (needed && !registered) {
+        registerSensorStream(stream);
+      } else if (!needed && registered) {
+        sensorHandler.unregisterSensorListener(stream.sensorType);
+      }
+    }
+  }
+
+  /** Whether a subscribed stream computed on the device reads this sensor. */
+  private boolean isNeededByDerivedStream(int sensorType) {
+    StreamScheduler scheduler = communicationHandler.getStreamScheduler();
+    boolean fusion =
+        sensorHandler.isFusionEnabled() && scheduler.isSubscribed(Stream.FUSED_ORIENTATION);
+    switch (sensorType) {
+      case Sensor.TYPE_GRAVITY:
+        return scheduler.isSubscribed(Stream.DEVICE_ORIENTATION);
+      case Sensor.TYPE_ACCELEROMETER:
+        return fusion
+            || (sensorHandler.isMotionGesturesEnabled()
+                && scheduler.isSubscribed(Stream.MOTION_GESTURE));
+      case Sensor.TYPE_GYROSCOPE:
+        return fusion
+            || (sensorHandler.isMotionGesturesEnabled()
+                && scheduler.isSubscribed(Stream.MOTION_GESTURE))
+            || (communicationHandler.isPosePredictionEnabled()
+                && scheduler.isSubscribed(Stream.ARPOSE));
+      case Sensor.TYPE_MAGNETIC_FIELD:
+        return fusion && sensorHandler.isFusionUsingMagnetometer();
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Pauses ARCore while none of ARPOSE, PLANE (if plane streaming is on) and DEPTH (if depth
+   * streaming is on) is subscribed, and resumes it when one is again. Returns true if the session
+   * was paused or resumed. While the activity is paused, this is left to onResume().
+   */
+  private boolean applyARCoreSubscription() {
+    if (!resumed) {
+      subscriptionsPending = true;
+      return false;
+    }
+    if (!updateARCoreNeeded()) return false;
+
+    if (!USE_AR_CORE || !toggleARCoreSwitch.isChecked()) return false;
+    if (arCoreNeeded) {
+      ARCoreOnResume();
+    } else {
+      ARCoreOnPause();
+      pose = null;
+    }
+    return true;
+  }
+
+  /** Updates arCoreNeeded from the subscribed streams; returns true if it changed. */
+  private boolean updateARCoreNeeded() {
+    StreamScheduler scheduler = communicationHandler.getStreamScheduler();
+    boolean needed =
+        scheduler.isSubscribed(Stream.ARPOSE)
+            || (planeStreamer.isEnabled() && scheduler.isSubscribed(Stream.PLANE))
+            || (depthStreamer.isEnabled() && scheduler.isSubscribed(Stream.DEPTH));
+    if (needed == arCoreNeeded) return false;
+    arCoreNeeded = needed;
+    Log.d(TAG, "ARCore needed by subscribed streams: " + needed);
+    return true;
   }
 
   private void disableSystemGestures() {
@@ -302,7 +586,7 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
           public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
             if (isChecked) {
               // Resume ARCore
-              if (USE_AR_CORE) ARCoreOnResume();
+              if (USE_AR_CORE && arCoreNeeded) ARCoreOnResume();
             } else {
               // Pause ARCore
               if (USE_AR_CORE) ARCoreOnPause();
@@ -368,74 +652,127 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     connectionIndicator.setGradientType(GradientDrawable.RADIAL_GRADIENT);
 
     // > set the gradient colors
-    connectionIndicator.setColor(Color.parseColor("#b5b5b5"));
+    connectionIndicator.setColor(COLOR_NOT_CONNECTED);
 
     // > set the drawable as the background of the view
     view.setBackground(connectionIndicator);
   }
 
   /** Display functions */
-  @SuppressLint({"DefaultLocale", "SetTextI18n"})
-  private void updateDisplayInfo() {
+  @SuppressLint("SetTextI18n")
+  private void updateDisplayInfo(long frameTimeNanos) {
 
     // ------ CONNECTION --------
+    int connectionState;
     if (communicationHandler.isRunning() && !communicationHandler.isConnected()) {
-      connectionStatusText.setText("sending...");
-      connectionIndicator.setColor(Color.parseColor("#ffb13d"));
+      connectionState = CONNECTION_STATE_SENDING;
     } else if (communicationHandler.isRunning() && communicationHandler.isConnected()) {
-      connectionStatusText.setText("connected");
-      connectionIndicator.setColor(Color.parseColor("#59c639"));
+      connectionState = CONNECTION_STATE_CONNECTED;
     } else {
-      connectionStatusText.setText("not connected");
-      connectionIndicator.setColor(Color.parseColor("#b5b5b5"));
+      connectionState = CONNECTION_STATE_NOT_CONNECTED;
+    }
+    if (connectionState != displayedConnectionState) {
+      displayedConnectionState = connectionState;
+      switch (connectionState) {
+        case CONNECTION_STATE_SENDING:
+          connectionStatusText.setText("sending...");
+          connectionIndicator.setColor(COLOR_SENDING);
+          break;
+        case CONNECTION_STATE_CONNECTED:
+          connectionStatusText.setText("connected");
+          connectionIndicator.setColor(COLOR_CONNECTED);
+          break;
+        default:
+          connectionStatusText.setText("not connected");
+          connectionIndicator.setColor(COLOR_NOT_CONNECTED);
+          break;
+      }
+    }
+
+    // enumerating network interfaces is expensive, so only do it occasionally
+    if (displayedDeviceIP == null
+        || frameTimeNanos - timeOfLastLocalIpRefresh_ns >= localIpRefreshInterval_ns) {
+      timeOfLastLocalIpRefresh_ns = frameTimeNanos;
+      String deviceIP = getLocalIpAddress();
+      if (!deviceIP.equals(displayedDeviceIP)) {
+        displayedDeviceIP = deviceIP;
+        deviceIPText.setText(deviceIP);
+      }
+    }
+    if (!hmdIPstring.equals(displayedHmdIP)) {
+      displayedHmdIP = hmdIPstring;
+      hmdIPText.setText(hmdIPstring);
     }
-    deviceIPText.setText(getLocalIpAddress());
-    hmdIPText.setText(hmdIPstring);
 
     if (sendingDataFlag) {
       tapsRemainingToStopConnection = tapsToStopConnection - touchHandler.getCurrentTapCount();
-      connectButton.setText(
-          "Tap anywhere " + tapsRemainingToStopConnection + " more times to disconnect");
+      if (tapsRemainingToStopConnection != displayedTapsRemaining) {
+        displayedTapsRemaining = tapsRemainingToStopConnection;
+        connectButtonTextBuilder.setLength(0);
+        connectButtonTextBuilder
+            .append("Tap anywhere ")
+            .append(tapsRemainingToStopConnection)
+            .append(" more times to disconnect");
+        connectButton.setText(connectButtonTextBuilder);
+      }
     }
 
     // ------ ARCORE --------
-    if (pose != null) {
-      float[] position = pose.getTranslation();
-      float[] rotation = pose.getRotationQuaternion();
-      float[] eulerAngles = quaternionToEulerAngles(rotation);
-
-      String msg =
-          "("
-              + String.format("%.2f", position[0])
-              + ", "
-              + String.format("%.2f", position[1])
-              + ", "
-              + String.format("%.2f", position[2])
-              + ")";
-      positionText.setText(msg);
-
-      msg =
-          "("
-              + String.format("%.2f", 180f * (1 / Math.PI) * eulerAngles[0])
-              + ", "
-              + String.format("%.2f", 180f * (1 / Math.PI) * eulerAngles[1])
-              + ", "
-              + String.format("%.2f", 180f * (1 / Math.PI) * eulerAngles[2])
-              + ")";
-      orientationText.setText(msg);
+    Pose currentPose = pose;
+    if (currentPose != null) {
+      currentPose.getTranslation(displayPosition, 0);
+      currentPose.getRotationQuaternion(displayRotation, 0);
+      quaternionToEulerAngles(displayRotation, displayEulerAngles);
+
+      for (int i = 0; i < 3; i++) {
+        position_hundredths[i] = Math.round(100f * displayPosition[i]);
+        eulerAngles_hundredths[i] =
+            (int) Math.round(100f * 180f * (1 / Math.PI) * displayEulerAngles[i]);
+      }
     } else {
-      String msg = "(0.00, 0.00, 0.00)";
-      positionText.setText(msg);
+      for (int i = 0; i < 3; i++) {
+        position_hundredths[i] = 0;
+        eulerAngles_hundredths[i] = 0;
+      }
+    }
 
-      msg = "(0.00, 0.00, 0.00)";
-      orientationText.setText(msg);
+    // only rebuild text if the displayed (rounded) values changed
+    if (forcePoseRefresh
+        || !Arrays.equals(position_hundredths, displayedPosition_hundredths)) {
+      System.arraycopy(position_hundredths, 0, displayedPosition_hundredths, 0, 3);
+      formatVector(positionTextBuilder, position_hundredths);
+      positionText.setText(positionTextBuilder);
     }
+    if (forcePoseRefresh
+        || !Arrays.equals(eulerAngles_hundredths, displayedEulerAngles_hundredths)) {
+      System.arraycopy(eulerAngles_hundredths, 0, displayedEulerAngles_hundredths, 0, 3);
+      formatVector(orientationTextBuilder, eulerAngles_hundredths);
+      orientationText.setText(orientationTextBuilder);
+    }
+    forcePoseRefresh = false;
   }
 
-  /** Helper Functions */
-  private static float[] quaternionToEulerAngles(float[] q) {
+  /** Writes "(x.xx, y.yy, z.zz)" into the builder, given values in hundredths. */
+  private static void formatVector(StringBuilder builder, int[] values_hundredths) {
+    builder.setLength(0);
+    builder.append('(');
+    for (int i = 0; i < values_hundredths.length; i++) {
+      if (i > 0) builder.append(", ");
+      int value = values_hundredths[i];
+      if (value < 0) {
+        builder.append('-');
+        value = -value;
+      }
+      builder.append(value / 100).append('.');
+      int fraction = value % 100;
+      if (fraction < 10) builder.append('0');
+      builder.append(fraction);
+    }
+    builder.append(')');
+  }
 
-    float[] angles = new float[3];
+  /** Helper Functions */
+  private static void quaternionToEulerAngles(float[] q, float[] angles) {
 
     // roll (x-axis rotation)
     float sinr_cosp = 2 * (q[3] * q[0] + q[1] * q[2]);
@@ -454,8 +791,6 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     float siny_cosp = 2 * (q[3] * q[2] + q[0] * q[1]);
     float cosy_cosp = 1 - 2 * (q[1] * q[1] + q[2] * q[2]);
     angles[2] = (float) Math.atan2(siny_cosp, cosy_cosp);
-
-    return angles;
   }
 
   public String getLocalIpAddress() {
@@ -486,8 +821,13 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
    */
   private static final String SEARCHING_PLANE_MESSAGE = "Localizing using ARCore...";
 
+  // Headless tracking: the camera image is never drawn, so ARCore only needs a camera texture and
+  // a minimal (1x1) surface to keep updating
+  private static final Boolean HEADLESS_TRACKING = true;
+
   private GLSurfaceView surfaceView;
   private BackgroundRenderer backgroundRenderer;
+  private Texture cameraTexture;
   private boolean hasSetTextureNames = false;
   private boolean installRequested;
 
@@ -499,6 +839,7 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
 
   public void ARCoreOnCreate() {
     surfaceView = findViewById(R.id.surfaceview);
+    if (HEADLESS_TRACKING) surfaceView.getHolder().setFixedSize(1, 1);
     displayRotationHelper = new DisplayRotationHelper(/* context= */ this);
 
     // Set up renderer.
@@ -627,11 +968,18 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     // Prepare the rendering objects. This involves reading shaders and 3D model files, so may throw
     // an IOException.
     try {
-      PlaneRenderer planeRenderer = new PlaneRenderer(render);
-      backgroundRenderer = new BackgroundRenderer(render);
-      /* width= */
-      /* height= */ Framebuffer virtualSceneFramebuffer =
-          new Framebuffer(render, /* width= */ 1, /* height= */ 1);
+      if (HEADLESS_TRACKING) {
+        // ARCore still needs a texture to write camera images to, but nothing samples it
+        cameraTexture =
+            new Texture(
+                render,
+                Texture.Target.TEXTURE_EXTERNAL_OES,
+                Texture.WrapMode.CLAMP_TO_EDGE,
+                /* useMipmaps= */ false);
+      } else {
+        backgroundRenderer = new BackgroundRenderer(render);
+        cameraTexture = backgroundRenderer.getCameraColorTexture();
+      }
     } catch (IOException e) {
       Log.e(TAG, "Failed to read a required asset file", e);
       messageSnackbarHelper.showError(this, "Failed to read a required asset file: " + e);
@@ -641,7 +989,6 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
   @Override
   public void onSurfaceChanged(SampleRender render, int width, int height) {
     // displayRotationHelper.onSurfaceChanged(width, height);
-    // virtualSceneFramebuffer.resize(width, height);
   }
 
   /** Function called every frame, grabs latest ARCore pose */
@@ -653,8 +1000,7 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     // onDrawFrame rather than onSurfaceCreated since the session is not guaranteed to have been
     // initialized during the execution of onSurfaceCreated.
     if (!hasSetTextureNames) {
-      session.setCameraTextureNames(
-          new int[] {backgroundRenderer.getCameraColorTexture().getTextureId()});
+      session.setCameraTextureNames(new int[] {cameraTexture.getTextureId()});
       hasSetTextureNames = true;
     }
 
@@ -667,6 +1013,7 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     // Obtain the current frame from the AR Session. When the configuration is set to
     // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
     // camera framerate.
+    Frame frame;
     try {
       frame = session.update();
       pose = frame.getAndroidSensorPose();
@@ -678,6 +1025,24 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
     }
     Camera camera = frame.getCamera();
 
+    // send each new pose exactly once, stamped with its camera frame's timestamp (update() returns
+    // the same frame again if no new camera image is available yet)
+    long timestamp_ns = frame.getTimestamp();
+    if (camera.getTrackingState() == TrackingState.TRACKING) {
+      if (timestamp_ns != lastPoseTimestamp_ns) {
+        lastPoseTimestamp_ns = timestamp_ns;
+        communicationHandler.getPosePredictor().addPose(timestamp_ns, pose);
+        if (communicationHandler.isRunning()) {
+          communicationHandler.sendPose(pose, timestamp_ns, sensorHandler);
+        }
+      }
+    } else {
+      communicationHandler.getPosePredictor().reset();
+    }
+    planeStreamer.update(session, frame);
+    depthStreamer.update(frame);
+    hitTester.update(frame);
+
     // Keep the screen unlocked while tracking, but allow it to lock when tracking stops.
     trackingStateHelper.updateKeepScreenOnFlag(camera.getTrackingState());
 
@@ -702,13 +1067,127 @@ public class MainActivity extends AppCompatActivity implements SampleRender.Rend
 
   private void configureSession() {
     Config config = session.getConfig();
-    config.setLightEstimationMode(Config.LightEstimationMode.ENVIRONMENTAL_HDR);
-    if (session.isDepthModeSupported(Config.DepthMode.AUTOMATIC)) {
-      config.setDepthMode(Config.DepthMode.AUTOMATIC);
-    } else {
+    if (getEffectiveARCoreProfile() == ARCoreProfile.POSE_ONLY) {
+      // only the device pose is streamed
+      config.setLightEstimationMode(Config.LightEstimationMode.DISABLED);
       config.setDepthMode(Config.DepthMode.DISABLED);
+      config.setPlaneFindingMode(Config.PlaneFindingMode.DISABLED);
+    } else {
+      config.setLightEstimationMode(Config.LightEstimationMode.ENVIRONMENTAL_HDR);
+      if (session.isDepthModeSupported(Config.DepthMode.AUTOMATIC)) {
+        config.setDepthMode(Config.DepthMode.AUTOMATIC);
+      } else {
+        config.setDepthMode(Config.DepthMode.DISABLED);
+      }
+      config.setPlaneFindingMode(Config.PlaneFindingMode.HORIZONTAL);
+    }
+    if (planeStreamer.isEnabled()) {
+      config.setPlaneFindingMode(Config.PlaneFindingMode.HORIZONTAL_AND_VERTICAL);
+    }
+    if (depthStreamer.isEnabled() && session.isDepthModeSupported(Config.DepthMode.AUTOMATIC)) {
+      config.setDepthMode(Config.DepthMode.AUTOMATIC);
     }
+    depthStreamer.setDepthModeEnabled(config.getDepthMode() == Config.DepthMode.AUTOMATIC);
     config.setInstantPlacementMode(InstantPlacementMode.DISABLED);
+    session.setCameraConfig(selectCameraConfig());
     session.configure(config);
   }
+
+  /** Picks the camera config for the current profile (the session must be paused). */
+  private CameraConfig selectCameraConfig() {
+    ARCoreProfile profile = getEffectiveARCoreProfile();
+    CameraConfigFilter filter = new CameraConfigFilter(session);
+    if (profile == ARCoreProfile.POSE_ONLY) {
+      filter.setTargetFps(EnumSet.of(CameraConfig.TargetFps.TARGET_FPS_30));
+      if (!depthStreamer.isEnabled()) {
+        filter.setDepthSensorUsage(EnumSet.of(CameraConfig.DepthSensorUsage.DO_NOT_USE));
+      }
+    }
+    List<CameraConfig> cameraConfigs = session.getSupportedCameraConfigs(filter);
+    if (cameraConfigs.isEmpty()) {
+      cameraConfigs = session.getSupportedCameraConfigs(new CameraConfigFilter(session));
+    }
+
+    // the first config is ARCore's default
+    CameraConfig selected = cameraConfigs.get(0);
+    if (profile == ARCoreProfile.POSE_ONLY) {
+      // every supported config tracks, so use the one with the fewest pixels to process
+      for (CameraConfig cameraConfig : cameraConfigs) {
+        if (pixelCount(cameraConfig) < pixelCount(selected)) selected = cameraConfig;
+      }
+    }
+    return selected;
+  }
+
+  private static long pixelCount(CameraConfig cameraConfig) {
+    return (long) cameraConfig.getImageSize().getWidth() * cameraConfig.getImageSize().getHeight()
+        + (long) cameraConfig.getTextureSize().getWidth()
+            * cameraConfig.getTextureSize().getHeight();
+  }
+
+  /** Switches the ARCore profile, restarting the session if it is running (UI thread). */
+  public void setARCoreProfile(ARCoreProfile profile) {
+    if (profile == arCoreProfile) return;
+    ARCoreProfile previous = getEffectiveARCoreProfile();
+    arCoreProfile = profile;
+    Log.d(TAG, "ARCore profile: " + profile);
+
+    if (getEffectiveARCoreProfile() != previous) restartARCoreSession();
+  }
+
+  /** The requested ARCore profile, held at POSE_ONLY when the quality tier does not allow FULL. */
+  private ARCoreProfile getEffectiveARCoreProfile() {
+    return qualityTier.allowsFullARCore ? arCoreProfile : ARCoreProfile.POSE_ONLY;
+  }
+
+  /** Applies a quality tier to stream rates, sensor batching and ARCore (UI thread). */
+  private void setQualityTier(QualityTier tier) {
+    ARCoreProfile previous = getEffectiveARCoreProfile();
+    qualityTier = tier;
+
+    communicationHandler.getStreamScheduler().setRateScale(tier.rateScale);
+    applySensorBatching();
+    if (getEffectiveARCoreProfile() != previous) restartARCoreSession();
+
+    if (communicationHandler.isRunning()) {
+      communicationHandler.sendQualityTier(budgetController);
+    }
+  }
+
+  /** Batches sensor samples for at least as long as the HMD asked and the quality tier needs. */
+  private void applySensorBatching() {
+    int maxReportLatency_ms =
+        Math.max(requestedMaxReportLatency_ms, qualityTier.minReportLatency_ms);
+    sensorHandler.setMaxReportLatency(maxReportLatency_ms * 1000);
+  }
+
+  /** Turns plane streaming on or off, enabling plane finding as needed (UI thread). */
+  public void setPlaneStreaming(boolean enabled) {
+    if (enabled == planeStreamer.isEnabled()) return;
+    planeStreamer.setEnabled(enabled);
+    if (!applyARCoreSubscription()) restartARCoreSession();
+  }
+
+  /** Turns depth streaming on or off, enabling the depth mode as needed (UI thread). */
+  public void setDepthStreaming(boolean enabled) {
+    if (enabled == depthStreamer.isEnabled()) return;
+    depthStreamer.setEnabled(enabled);
+    if (!applyARCoreSubscription()) restartARCoreSession();
+  }
+
+  /**
+   * Re-applies the session configuration, restarting the session if it is running (while the
+   * activity is paused, onResume() applies it).
+   */
+  private void restartARCoreSession() {
+    // the camera config can only be changed while the session is paused
+    if (USE_AR_CORE
+        && resumed
+        && session != null
+        && toggleARCoreSwitch.isChecked()
+        && arCoreNeeded) {
+      ARCoreOnPause();
+      ARCoreOnResume();
+    }
+  }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+/**
+ * Incremental recognizer for discrete motion gestures (shake, flip, twist, tap on the back of the
+ * device). It is fed every accelerometer, gyroscope and gravity sample on the sensor callback
+ * thread and keeps only primitive state, so recognition allocates nothing.
+ */
+public class MotionGestureRecognizer {
+  public enum Gesture {
+    SHAKE, // value: number of shake peaks
+    FLIP, // value: 1 (now face up) or -1 (now face down)
+    TWIST, // value: 1 (counterclockwise) or -1 (clockwise) about the device's long (y) axis
+    BACK_TAP // value: number of consecutive taps
+  }
+
+  /** Notified on the sensor callback thread when a gesture is recognized. */
+  public interface OnMotionGestureListener {
+    void onMotionGesture(Gesture gesture, int value);
+  }
+
+  private OnMotionGestureListener onMotionGestureListener;
+
+  // high-pass filtered acceleration (accelerometer minus its low-pass filtered gravity)
+  private static final float GRAVITY_TIME_CONSTANT_S = 0.1f;
+  private final float[] lowPass = new float[3];
+  private final float[] highPass = new float[3];
+  private long lastAccelTimestamp_ns = 0;
+  private float angularSpeed = 0; // rad/s, latest gyroscope magnitude
+
+  // shake: repeated strong acceleration peaks
+  private static final float SHAKE_THRESHOLD = 12f; // m/s^2
+  private static final long SHAKE_MIN_PEAK_INTERVAL_NS = 80_000_000L;
+  private static final long SHAKE_WINDOW_NS = 800_000_000L;
+  private static final int SHAKE_MIN_PEAKS = 4;
+  private static final long SHAKE_COOLDOWN_NS = 1_000_000_000L;
+  private boolean shakeAboveThreshold = false;
+  private int shakePeaks = 0;
+  private long firstShakePeak_ns = 0;
+  private long lastShakePeak_ns = 0;
+  private long lastShake_ns = 0;
+
+  // flip: face up <-> face down in a short time
+  private static final float FACE_THRESHOLD = 0.8f; // normalized gravity z
+  private static final long FLIP_WINDOW_NS = 1_000_000_000L;
+  private int lastFace = 0; // 1: face up, -1: face down, 0: unknown
+  private long lastFace_ns = 0;
+
+  // twist: fast rotation about the device's y axis
+  private static final float TWIST_RATE = 3f; // rad/s
+  private static final float TWIST_ANGLE = (float) (Math.PI / 2);
+  private static final long TWIST_WINDOW_NS = 500_000_000L;
+  private static final long TWIST_COOLDOWN_NS = 500_000_000L;
+  private float twistAngle = 0;
+  private long twistStart_ns = 0;
+  private long lastGyroTimestamp_ns = 0;
+  private long lastTwist_ns = 0;
+
+  // back tap: short spike along the device's z axis while the device is otherwise still
+  private static final float TAP_THRESHOLD = 3f; // m/s^2
+  private static final float TAP_MAX_ANGULAR_SPEED = 1.5f; // rad/s
+  private static final long TAP_REFRACTORY_NS = 150_000_000L;
+  private static final long TAP_SEQUENCE_WINDOW_NS = 500_000_000L;
+  private boolean tapAboveThreshold = false;
+  private int tapCount = 0;
+  private long lastTap_ns = 0;
+
+  public void setOnMotionGestureListener(OnMotionGestureListener listener) {
+    onMotionGestureListener = listener;
+  }
+
+  public void reset() {
+    lastAccelTimestamp_ns = 0;
+    lastGyroTimestamp_ns = 0;
+    shakeAboveThreshold = false;
+    shakePeaks = 0;
+    lastFace = 0;
+    twistAngle = 0;
+    twistStart_ns = 0;
+    tapAboveThreshold = false;
+    tapCount = 0;
+  }
+
+  /** Accelerometer sample (m/s^2, including gravity). */
+  public void onAccelerometer(float[] values, long timestamp_ns) {
+    if (lastAccelTimestamp_ns == 0) {
+      // start the gravity estimate at the first sample
+      lowPass[0] = values[0];
+      lowPass[1] = values[1];
+      lowPass[2] = values[2];
+    }
+    float dt = lastAccelTimestamp_ns > 0 ? (timestamp_ns - lastAccelTimestamp_ns) * 1e-9f : 0;
+    lastAccelTimestamp_ns = timestamp_ns;
+
+    float alpha = dt / (GRAVITY_TIME_CONSTANT_S + dt);
+    for (int i = 0; i < 3; i++) {
+      lowPass[i] += alpha * (values[i] - lowPass[i]);
+      highPass[i] = values[i] - lowPass[i];
+    }
+
+    detectShake(timestamp_ns);
+    detectBackTap(timestamp_ns);
+  }
+
+  /** Gyroscope sample (rad/s). */
+  public void onGyroscope(float[] values, long timestamp_ns) {
+    float wx = values[0], wy = values[1], wz = values[2];
+    angularSpeed = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+
+    float dt = lastGyroTimestamp_ns > 0 ? (timestamp_ns - lastGyroTimestamp_ns) * 1e-9f : 0;
+    lastGyroTimestamp_ns = timestamp_ns;
+
+    // only count rotation that is fast and mostly about the y axis
+    boolean twisting =
+        Math.abs(wy) > TWIST_RATE && Math.abs(wy) > 2 * Math.max(Math.abs(wx), Math.abs(wz));
+    if (!twisting || timestamp_ns - twistStart_ns > TWIST_WINDOW_NS) {
+      twistAngle = 0;
+      twistStart_ns = timestamp_ns;
+      if (!twisting) return;
+    }
+    twistAngle += wy * dt;
+
+    if (Math.abs(twistAngle) > TWIST_ANGLE && timestamp_ns - lastTwist_ns > TWIST_COOLDOWN_NS) {
+      lastTwist_ns = timestamp_ns;
+      notify(Gesture.TWIST, twistAngle > 0 ? 1 : -1);
+      twistAngle = 0;
+      twistStart_ns = timestamp_ns;
+    }
+  }
+
+  /** Normalized gravity direction (e.g. as computed for DEVICE_ORIENTATION). */
+  public void onGravity(float[] normalizedGravity, long timestamp_ns) {
+    int face = 0;
+    if (normalizedGravity[2] > FACE_THRESHOLD) {
+      face = 1;
+    } else if (normalizedGravity[2] < -FACE_THRESHOLD) {
+      face = -1;
+    }
+    if (face == 0) return;
+
+    if (face == -lastFace && timestamp_ns - lastFace_ns < FLIP_WINDOW_NS) {
+      notify(Gesture.FLIP, face);
+    }
+    lastFace = face;
+    lastFace_ns = timestamp_ns;
+  }
+
+  private void detectShake(long timestamp_ns) {
+    float magnitude =
+        (float)
+            Math.sqrt(
+                highPass[0] * highPass[0] + highPass[1] * highPass[1] + highPass[2] * highPass[2]);
+
+    // count rising edges through the threshold
+    boolean above = magnitude > SHAKE_THRESHOLD;
+    boolean peak = above && !shakeAboveThreshold;
+    shakeAboveThreshold = above;
+    if (!peak || timestamp_ns - lastShakePeak_ns < SHAKE_MIN_PEAK_INTERVAL_NS) return;
+
+    if (shakePeaks == 0 || timestamp_ns - firstShakePeak_ns > SHAKE_WINDOW_NS) {
+      shakePeaks = 0;
+      firstShakePeak_ns = timestamp_ns;
+    }
+    shakePeaks++;
+    lastShakePeak_ns = timestamp_ns;
+
+    if (shakePeaks >= SHAKE_MIN_PEAKS && timestamp_ns - lastShake_ns > SHAKE_COOLDOWN_NS) {
+      lastShake_ns = timestamp_ns;
+      notify(Gesture.SHAKE, shakePeaks);
+      shakePeaks = 0;
+    }
+  }
+
+  private void detectBackTap(long timestamp_ns) {
+    float az = Math.abs(highPass[2]);
+    boolean above =
+        az > TAP_THRESHOLD
+            && az > 2 * Math.max(Math.abs(highPass[0]), Math.abs(highPass[1]))
+            && angularSpeed < TAP_MAX_ANGULAR_SPEED;
+    boolean tap = above && !tapAboveThreshold;
+    tapAboveThreshold = above;
+
+    // ignore spikes that are part of a shake or the tail of the previous tap
+    boolean shaking =
+        shakeAboveThreshold
+            || (shakePeaks > 1 && timestamp_ns - lastShakePeak_ns < SHAKE_WINDOW_NS);
+    if (!tap || shaking || timestamp_ns - lastTap_ns < TAP_REFRACTORY_NS) {
+      return;
+    }
+
+    tapCount = timestamp_ns - lastTap_ns < TAP_SEQUENCE_WINDOW_NS ? tapCount + 1 : 1;
+    lastTap_ns = timestamp_ns;
+    notify(Gesture.BACK_TAP, tapCount);
+  }
+
+  private void notify(Gesture gesture, int value) {
+    if (onMotionGestureListener != null) {
+      onMotionGestureListener.onMotionGesture(gesture, value);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+import android.view.MotionEvent;
+
+/**
+ * Incremental recognizer for multi-finger gestures: two-or-more-finger rotate and pan, and N-finger
+ * swipes. Each move only compares the pointers with their positions in the previous event, and
+ * adding or lifting a finger re-bases that comparison, so the gesture continues smoothly instead of
+ * jumping with the centroid. It keeps only primitive state, so recognition allocates nothing.
+ *
+ * <p>Rotate and pan carry the whole transform since the gesture started: focus point (raw screen
+ * coordinates), translation (px), scale and angle (degrees, clockwise on screen).
+ */
+public class MultiTouchGestureRecognizer {
+  public enum Gesture {
+    ROTATE,
+    PAN
+  }
+
+  public enum Phase {
+    START,
+    MOVE,
+    END
+  }
+
+  /** Notified on the thread that feeds the recognizer. */
+  public interface OnMultiTouchGestureListener {
+    void onTransformGesture(
+        Gesture gesture,
+        Phase phase,
+        int pointerCount,
+        float focusX,
+        float focusY,
+        float translationX,
+        float translationY,
+        float scale,
+        float angle_deg);
+
+    /** A quick N-finger (N >= 2) swipe, velocity in px/s. */
+    void onSwipe(int pointerCount, float velocityX, float velocityY);
+  }
+
+  private OnMultiTouchGestureListener listener;
+
+  private static final int MAX_POINTER_ID = 31;
+  private static final float ROTATE_THRESHOLD_DEG = 10f;
+  private static final float SWIPE_MAX_ANGLE_DEG = 20f;
+  private static final float SWIPE_MAX_SCALE_CHANGE = 0.25f;
+  private static final long SWIPE_MAX_IDLE_NS = 100_000_000L;
+  private static final float VELOCITY_SMOOTHING = 0.5f; // weight of the newest velocity estimate
+  private final float panThreshold_px;
+  private final float minSwipeVelocity; // px/s
+
+  // pointer positions (view coordinates) in the previous event
+  private final float[] lastX = new float[MAX_POINTER_ID + 1];
+  private final float[] lastY = new float[MAX_POINTER_ID + 1];
+  private final boolean[] tracked = new boolean[MAX_POINTER_ID + 1];
+  private float lastFocusX, lastFocusY;
+  private long lastTime_ns;
+  private float rawOffsetX, rawOffsetY;
+
+  // transform since the gesture started
+  private int pointerCount = 0;
+  private float translationX, translationY;
+  private float scale = 1;
+  private float angle = 0; // rad
+  private float velocityX, velocityY; // px/s, of the focus point
+  private boolean rotating = false;
+  private boolean panning = false;
+
+  // swipe: evaluated when the first finger lifts
+  private int maxPointerCount = 0;
+  private boolean swipeChecked = false;
+
+  /**
+   * @param touchSlop_px distance a touch can wander before it is a move (ViewConfiguration)
+   * @param minSwipeVelocity px/s the focus point must move at for a swipe
+   */
+  public MultiTouchGestureRecognizer(float touchSlop_px, float minSwipeVelocity) {
+    panThreshold_px = 2 * touchSlop_px;
+    this.minSwipeVelocity = minSwipeVelocity;
+  }
+
+  public void setOnMultiTouchGestureListener(OnMultiTouchGestureListener listener) {
+    this.listener = listener;
+  }
+
+  /** Feeds a touch event (every action, in order). */
+  public void onTouchEvent(MotionEvent event) {
+    int action = event.getActionMasked();
+    rawOffsetX = event.getRawX(0) - event.getX(0);
+    rawOffsetY = event.getRawY(0) - event.getY(0);
+    long time_ns = CommunicationHandler.getEventTime_ns(event, -1);
+
+    switch (action) {
+      case MotionEvent.ACTION_DOWN:
+        end();
+        maxPointerCount = 1;
+        swipeChecked = false;
+        rebase(event, -1, time_ns);
+        break;
+
+      case MotionEvent.ACTION_POINTER_DOWN:
+        maxPointerCount = Math.max(maxPointerCount, event.getPointerCount());
+        rebase(event, -1, time_ns);
+        break;
+
+      case MotionEvent.ACTION_MOVE:
+        if (pointerCount >= 2) move(event, time_ns);
+        break;
+
+      case MotionEvent.ACTION_POINTER_UP:
+        if (!swipeChecked && event.getPointerCount() == maxPointerCount) {
+          // the first finger of the gesture lifted
+          swipeChecked = true;
+          checkSwipe(time_ns);
+        }
+        if (event.getPointerCount() - 1 < 2) {
+          end();
+        }
+        rebase(event, event.getActionIndex(), time_ns);
+        break;
+
+      case MotionEvent.ACTION_UP:
+      case MotionEvent.ACTION_CANCEL:
+        end();
+        break;
+    }
+  }
+
+  /** Starts comparing with this event's pointers (except the one at skipIndex). */
+  private void rebase(MotionEvent event, int skipIndex, long time_ns) {
+    for (int i = 0; i <= MAX_POINTER_ID; i++) tracked[i] = false;
+    int count = 0;
+    float focusX = 0, focusY = 0;
+    for (int i = 0; i < event.getPointerCount(); i++) {
+      int pointerId = event.getPointerId(i);
+      if (i == skipIndex || pointerId > MAX_POINTER_ID) continue;
+      tracked[pointerId] = true;
+      lastX[pointerId] = event.getX(i);
+      lastY[pointerId] = event.getY(i);
+      focusX += lastX[pointerId];
+      focusY += lastY[pointerId];
+      count++;
+    }
+    if (count >= 2 && pointerCount < 2) {
+      // a new transform
+      translationX = 0;
+      translationY = 0;
+      scale = 1;
+      angle = 0;
+      velocityX = 0;
+      velocityY = 0;
+    }
+    pointerCount = count;
+    if (count > 0) {
+      lastFocusX = focusX / count;
+      lastFocusY = focusY / count;
+    }
+    lastTime_ns = time_ns;
+  }
+
+  private void move(MotionEvent event, long time_ns) {
+    // focus point of the pointers that were already tracked
+    int count = 0;
+    float focusX = 0, focusY = 0;
+    for (int i = 0; i < event.getPointerCount(); i++) {
+      int pointerId = event.getPointerId(i);
+      if (pointerId > MAX_POINTER_ID || !tracked[pointerId]) continue;
+      focusX += event.getX(i);
+      focusY += event.getY(i);
+      count++;
+    }
+    if (count < 2) return;
+    focusX /= count;
+    focusY /= count;
+
+    // mean change of each pointer's distance and angle to the focus point
+    float spanBefore = 0, spanAfter = 0, rotation = 0;
+    for (int i = 0; i < event.getPointerCount(); i++) {
+      int pointerId = event.getPointerId(i);
+      if (pointerId > MAX_POINTER_ID || !tracked[pointerId]) continue;
+      float beforeX = lastX[pointerId] - lastFocusX, beforeY = lastY[pointerId] - lastFocusY;
+      float afterX = event.getX(i) - focusX, afterY = event.getY(i) - focusY;
+      spanBefore += (float) Math.hypot(beforeX, beforeY);
+      spanAfter += (float) Math.hypot(afterX, afterY);
+      float delta = (float) (Math.atan2(afterY, afterX) - Math.atan2(beforeY, beforeX));
+      if (delta > Math.PI) delta -= (float) (2 * Math.PI);
+      if (delta < -Math.PI) delta += (float) (2 * Math.PI);
+      rotation += delta;
+      lastX[pointerId] = event.getX(i);
+      lastY[pointerId] = event.getY(i);
+    }
+
+    float dx = focusX - lastFocusX, dy = focusY - lastFocusY;
+    translationX += dx;
+    translationY += dy;
+    if (spanBefore > 0 && spanAfter > 0) scale *= spanAfter / spanBefore;
+    angle += rotation / count;
+    float dt = (time_ns - lastTime_ns) * 1e-9f;
+    if (dt > 0) {
+      velocityX += VELOCITY_SMOOTHING * (dx / dt - velocityX);
+      velocityY += VELOCITY_SMOOTHING * (dy / dt - velocityY);
+    }
+    lastFocusX = focusX;
+    lastFocusY = focusY;
+    lastTime_ns = time_ns;
+
+    if (!rotating && Math.abs(Math.toDegrees(angle)) > ROTATE_THRESHOLD_DEG) {
+      rotating = true;
+      notify(Gesture.ROTATE, Phase.START);
+    } else if (rotating) {
+      notify(Gesture.ROTATE, Phase.MOVE);
+    }
+    if (!panning && Math.hypot(translationX, translationY) > panThreshold_px) {
+      panning = true;
+      notify(Gesture.PAN, Phase.START);
+    } else if (panning) {
+      notify(Gesture.PAN, Phase.MOVE);
+    }
+  }
+
+  private void checkSwipe(long time_ns) {
+    if (maxPointerCount < 2 || time_ns - lastTime_ns > SWIPE_MAX_IDLE_NS) return;
+    if (Math.hypot(velocityX, velocityY) < minSwipeVelocity) return;
+    // a swipe moves the fingers together, without turning or pinching
+    if (Math.abs(Math.toDegrees(angle)) > SWIPE_MAX_ANGLE_DEG) return;
+    if (Math.abs(scale - 1) > SWIPE_MAX_SCALE_CHANGE) return;
+    if (listener != null) listener.onSwipe(maxPointerCount, velocityX, velocityY);
+  }
+
+  private void end() {
+    if (rotating) notify(Gesture.ROTATE, Phase.END);
+    if (panning) notify(Gesture.PAN, Phase.END);
+    rotating = false;
+    panning = false;
+    pointerCount = 0;
+  }
+
+  private void notify(Gesture gesture, Phase phase) {
+    if (listener == null) return;
+    listener.onTransformGesture(
+        gesture,
+        phase,
+        pointerCount,
+        rawOffsetX + lastFocusX,
+        rawOffsetY + lastFocusY,
+        translationX,
+        translationY,
+        scale,
+        (float) Math.toDegrees(angle));
+  }
+}
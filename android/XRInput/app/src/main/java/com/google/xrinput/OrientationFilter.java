@@ -0,0 +1,246 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+/**
+ * Madgwick orientation filter (https://x-io.co.uk/open-source-imu-and-ahrs-algorithms/), fusing
+ * gyroscope, accelerometer and (optionally) magnetometer samples into a single orientation.
+ *
+ * <p>The output uses the same convention as Android's rotation vectors: a quaternion (x, y, z, w)
+ * rotating device coordinates into a world frame with z pointing up (and y pointing to magnetic
+ * north when the magnetometer is used, otherwise the heading is arbitrary, as for the game rotation
+ * vector). All state is primitive, so updates allocate nothing.
+ */
+public class OrientationFilter {
+  private static final float SQRT_HALF = (float) Math.sqrt(0.5);
+  private static final float WARMUP_GAIN = 2.5f;
+  private static final long WARMUP_DURATION_NS = 1_000_000_000L;
+
+  private float beta = 0.1f; // filter gain
+  private long warmupRemaining_ns = WARMUP_DURATION_NS;
+
+  // orientation of sensor frame relative to earth frame (w, x, y, z), earth frame x = north
+  private float q0 = 1, q1 = 0, q2 = 0, q3 = 0;
+
+  /** Sets the filter gain; larger values trust the accelerometer/magnetometer more. */
+  public void setGain(float beta) {
+    this.beta = beta;
+  }
+
+  public void reset() {
+    q0 = 1;
+    q1 = 0;
+    q2 = 0;
+    q3 = 0;
+    warmupRemaining_ns = WARMUP_DURATION_NS;
+  }
+
+  /**
+   * Updates the orientation with one gyroscope sample (rad/s) and the latest accelerometer and
+   * magnetometer readings. Pass mag = null (or all zeros) to fuse gyroscope and accelerometer only.
+   */
+  public void update(float[] gyro, float[] accel, float[] mag, long dt_ns) {
+    if (dt_ns <= 0) return;
+    float dt = dt_ns * 1e-9f;
+
+    // converge quickly from the initial (identity) orientation
+    float gain = beta;
+    if (warmupRemaining_ns > 0) {
+      warmupRemaining_ns -= dt_ns;
+      gain = WARMUP_GAIN;
+    }
+
+    if (mag == null || (mag[0] == 0 && mag[1] == 0 && mag[2] == 0)) {
+      updateIMU(gyro[0], gyro[1], gyro[2], accel[0], accel[1], accel[2], gain, dt);
+    } else {
+      updateMARG(
+          gyro[0], gyro[1], gyro[2], accel[0], accel[1], accel[2], mag[0], mag[1], mag[2], gain,
+          dt);
+    }
+  }
+
+  /** Writes the fused orientation as (x, y, z, w) in Android's east-north-up world frame. */
+  public void getQuaternion(float[] out) {
+    // rotate the filter's north-west-up world frame by +90 degrees about z (east-north-up)
+    out[0] = SQRT_HALF * (q1 - q2);
+    out[1] = SQRT_HALF * (q1 + q2);
+    out[2] = SQRT_HALF * (q3 + q0);
+    out[3] = SQRT_HALF * (q0 - q3);
+  }
+
+  private void updateIMU(
+      float gx, float gy, float gz, float ax, float ay, float az, float gain, float dt) {
+    // rate of change of quaternion from gyroscope
+    float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+    float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+    float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+    float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+    // feedback from accelerometer (only if the measurement is valid)
+    if (!(ax == 0 && ay == 0 && az == 0)) {
+      float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+      ax *= recipNorm;
+      ay *= recipNorm;
+      az *= recipNorm;
+
+      float _2q0 = 2f * q0;
+      float _2q1 = 2f * q1;
+      float _2q2 = 2f * q2;
+      float _2q3 = 2f * q3;
+      float _4q0 = 4f * q0;
+      float _4q1 = 4f * q1;
+      float _4q2 = 4f * q2;
+      float _8q1 = 8f * q1;
+      float _8q2 = 8f * q2;
+      float q0q0 = q0 * q0;
+      float q1q1 = q1 * q1;
+      float q2q2 = q2 * q2;
+      float q3q3 = q3 * q3;
+
+      // gradient descent corrective step
+      float s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+      float s1 =
+          _4q1 * q3q3 - _2q3 * ax + 4f * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1 + _8q1 * q2q2
+              + _4q1 * az;
+      float s2 =
+          4f * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1 + _8q2 * q2q2
+              + _4q2 * az;
+      float s3 = 4f * q1q1 * q3 - _2q1 * ax + 4f * q2q2 * q3 - _2q2 * ay;
+      recipNorm = invSqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+      if (!Float.isInfinite(recipNorm)) {
+        qDot1 -= gain * s0 * recipNorm;
+        qDot2 -= gain * s1 * recipNorm;
+        qDot3 -= gain * s2 * recipNorm;
+        qDot4 -= gain * s3 * recipNorm;
+      }
+    }
+
+    integrate(qDot1, qDot2, qDot3, qDot4, dt);
+  }
+
+  private void updateMARG(
+      float gx,
+      float gy,
+      float gz,
+      float ax,
+      float ay,
+      float az,
+      float mx,
+      float my,
+      float mz,
+      float gain,
+      float dt) {
+    // rate of change of quaternion from gyroscope
+    float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+    float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+    float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+    float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+    // feedback from accelerometer and magnetometer (only if the measurement is valid)
+    if (!(ax == 0 && ay == 0 && az == 0)) {
+      float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+      ax *= recipNorm;
+      ay *= recipNorm;
+      az *= recipNorm;
+      recipNorm = invSqrt(mx * mx + my * my + mz * mz);
+      mx *= recipNorm;
+      my *= recipNorm;
+      mz *= recipNorm;
+
+      float _2q0mx = 2f * q0 * mx;
+      float _2q0my = 2f * q0 * my;
+      float _2q0mz = 2f * q0 * mz;
+      float _2q1mx = 2f * q1 * mx;
+      float _2q0 = 2f * q0;
+      float _2q1 = 2f * q1;
+      float _2q2 = 2f * q2;
+      float _2q3 = 2f * q3;
+      float _2q0q2 = 2f * q0 * q2;
+      float _2q2q3 = 2f * q2 * q3;
+      float q0q0 = q0 * q0;
+      float q0q1 = q0 * q1;
+      float q0q2 = q0 * q2;
+      float q0q3 = q0 * q3;
+      float q1q1 = q1 * q1;
+      float q1q2 = q1 * q2;
+      float q1q3 = q1 * q3;
+      float q2q2 = q2 * q2;
+      float q2q3 = q2 * q3;
+      float q3q3 = q3 * q3;
+
+      // reference direction of earth's magnetic field
+      float hx =
+          mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2 + _2q1 * mz * q3
+              - mx * q2q2 - mx * q3q3;
+      float hy =
+          _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1 + my * q2q2
+              + _2q2 * mz * q3 - my * q3q3;
+      float _2bx = (float) Math.sqrt(hx * hx + hy * hy);
+      float _2bz =
+          -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1 + _2q2 * my * q3
+              - mz * q2q2 + mz * q3q3;
+      float _4bx = 2f * _2bx;
+      float _4bz = 2f * _2bz;
+
+      // gradient descent corrective step
+      float fAx = 2f * q1q3 - _2q0q2 - ax;
+      float fAy = 2f * q0q1 + _2q2q3 - ay;
+      float fAz = 1 - 2f * q1q1 - 2f * q2q2 - az;
+      float fMx = _2bx * (0.5f - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+      float fMy = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+      float fMz = _2bx * (q0q2 + q1q3) + _2bz * (0.5f - q1q1 - q2q2) - mz;
+      float s0 =
+          -_2q2 * fAx + _2q1 * fAy - _2bz * q2 * fMx + (-_2bx * q3 + _2bz * q1) * fMy
+              + _2bx * q2 * fMz;
+      float s1 =
+          _2q3 * fAx + _2q0 * fAy - 4f * q1 * fAz + _2bz * q3 * fMx + (_2bx * q2 + _2bz * q0) * fMy
+              + (_2bx * q3 - _4bz * q1) * fMz;
+      float s2 =
+          -_2q0 * fAx + _2q3 * fAy - 4f * q2 * fAz + (-_4bx * q2 - _2bz * q0) * fMx
+              + (_2bx * q1 + _2bz * q3) * fMy + (_2bx * q0 - _4bz * q2) * fMz;
+      float s3 =
+          _2q1 * fAx + _2q2 * fAy + (-_4bx * q3 + _2bz * q1) * fMx + (-_2bx * q0 + _2bz * q2) * fMy
+              + _2bx * q1 * fMz;
+      recipNorm = invSqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+      if (!Float.isInfinite(recipNorm)) {
+        qDot1 -= gain * s0 * recipNorm;
+        qDot2 -= gain * s1 * recipNorm;
+        qDot3 -= gain * s2 * recipNorm;
+        qDot4 -= gain * s3 * recipNorm;
+      }
+    }
+
+    integrate(qDot1, qDot2, qDot3, qDot4, dt);
+  }
+
+  private void integrate(float qDot1, float qDot2, float qDot3, float qDot4, float dt) {
+    q0 += qDot1 * dt;
+    q1 += qDot2 * dt;
+    q2 += qDot3 * dt;
+    q3 += qDot4 * dt;
+
+    float recipNorm = invSqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+    q0 *= recipNorm;
+    q1 *= recipNorm;
+    q2 *= recipNorm;
+    q3 *= recipNorm;
+  }
+
+  private static float invSqrt(float x) {
+    return (float) (1.0 / Math.sqrt(x));
+  }
+}
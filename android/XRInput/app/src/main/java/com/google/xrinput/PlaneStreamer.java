@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import com.google.ar.core.Frame;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Session;
+import com.google.ar.core.TrackingState;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams ARCore planes to the HMD incrementally: a plane is only sent when it is added, has
+ * changed beyond a threshold, or has been subsumed/stopped tracking. Planes keep a stable ID for
+ * their lifetime (like PlaneRenderer's planeIndexMap). Only the planes ARCore updated in a frame are
+ * looked at, so the per-frame cost does not depend on the total number of planes.
+ *
+ * <p>Must be updated from the GL thread, right after Session.update().
+ */
+public class PlaneStreamer {
+  private static final float POSITION_THRESHOLD_M = 0.02f;
+  private static final float EXTENT_THRESHOLD_M = 0.05f;
+  private static final float ROTATION_THRESHOLD_COS = (float) Math.cos(Math.toRadians(2) / 2);
+
+  private final CommunicationHandler communicationHandler;
+  private final Map<Plane, PlaneState> planeStates = new HashMap<>();
+  private final Set<Plane> pendingPlanes = new LinkedHashSet<>();
+  private final float[] translation = new float[3];
+  private final float[] rotation = new float[4];
+  private int nextPlaneId = 0;
+  private volatile boolean enabled = false;
+  private volatile boolean resendAll = false;
+
+  private static class PlaneState {
+    final int id;
+    final float[] translation = new float[3];
+    final float[] rotation = new float[4];
+    float extentX;
+    float extentZ;
+    int vertexCount;
+    boolean sent = false;
+
+    PlaneState(int id) {
+      this.id = id;
+    }
+  }
+
+  public PlaneStreamer(CommunicationHandler communicationHandler) {
+    this.communicationHandler = communicationHandler;
+  }
+
+  /**
+   * Enables plane streaming; every known plane is (re)sent on the next update, and planes that were
+   * sent before but have gone since are removed.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (enabled) resendAll = true;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Sends the planes that changed in this frame (or in skipped frames). */
+  public void update(Session session, Frame frame) {
+    if (!enabled) {
+      // getPlaneId() creates states while streaming is off; drop those of planes that went away
+      // unsent (sent ones are kept, so re-enabling removes them)
+      for (Plane plane : frame.getUpdatedTrackables(Plane.class)) {
+        PlaneState state = planeStates.get(plane);
+        if (state != null && !state.sent && isGone(plane)) planeStates.remove(plane);
+      }
+      return;
+    }
+
+    if (resendAll) {
+      resendAll = false;
+      for (Map.Entry<Plane, PlaneState> entry : planeStates.entrySet()) {
+        // planes that went away while streaming was off keep their sent flag, so they are removed
+        if (!isGone(entry.getKey())) entry.getValue().sent = false;
+        pendingPlanes.add(entry.getKey());
+      }
+      pendingPlanes.addAll(session.getAllTrackables(Plane.class));
+    }
+    pendingPlanes.addAll(frame.getUpdatedTrackables(Plane.class));
+
+    // keep updates pending until the stream is due, so none are lost
+    if (pendingPlanes.isEmpty() || !communicationHandler.isRunning()) return;
+    if (!communicationHandler.getStreamScheduler().isDue(Stream.PLANE)) return;
+
+    for (Plane plane : pendingPlanes) {
+      processPlane(plane);
+    }
+    pendingPlanes.clear();
+  }
+
+  private static boolean isGone(Plane plane) {
+    return plane.getSubsumedBy() != null || plane.getTrackingState() == TrackingState.STOPPED;
+  }
+
+  private void processPlane(Plane plane) {
+    Plane subsumedBy = plane.getSubsumedBy();
+    if (isGone(plane)) {
+      PlaneState state = planeStates.remove(plane);
+      if (state != null && state.sent) {
+        int subsumedById = subsumedBy != null ? getOrCreateState(subsumedBy).id : -1;
+        communicationHandler.sendPlaneRemoved(state.id, subsumedById);
+      }
+      return;
+    }
+    if (plane.getTrackingState() != TrackingState.TRACKING) return;
+
+    PlaneState state = getOrCreateState(plane);
+    Pose centerPose = plane.getCenterPose();
+    centerPose.getTranslation(translation, 0);
+    centerPose.getRotationQuaternion(rotation, 0);
+    FloatBuffer polygon = plane.getPolygon();
+    int vertexCount = polygon.limit() / 2;
+    if (state.sent && !hasChanged(state, plane, vertexCount)) return;
+
+    System.arraycopy(translation, 0, state.translation, 0, 3);
+    System.arraycopy(rotation, 0, state.rotation, 0, 4);
+    state.extentX = plane.getExtentX();
+    state.extentZ = plane.getExtentZ();
+    state.vertexCount = vertexCount;
+    state.sent = true;
+    communicationHandler.sendPlane(
+        state.id, plane.getType(), translation, rotation, state.extentX, state.extentZ, polygon);
+  }
+
+  /** Returns the plane's stable ID, as used in PLANE messages (GL thread). */
+  public int getPlaneId(Plane plane) {
+    return getOrCreateState(plane).id;
+  }
+
+  private PlaneState getOrCreateState(Plane plane) {
+    PlaneState state = planeStates.get(plane);
+    if (state == null) {
+      state = new PlaneState(nextPlaneId++);
+      planeStates.put(plane, state);
+    }
+    return state;
+  }
+
+  private boolean hasChanged(PlaneState state, Plane plane, int vertexCount) {
+    if (vertexCount != state.vertexCount) return true;
+    if (Math.abs(plane.getExtentX() - state.extentX) > EXTENT_THRESHOLD_M) return true;
+    if (Math.abs(plane.getExtentZ() - state.extentZ) > EXTENT_THRESHOLD_M) return true;
+
+    float dx = translation[0] - state.translation[0];
+    float dy = translation[1] - state.translation[1];
+    float dz = translation[2] - state.translation[2];
+    if (dx * dx + dy * dy + dz * dz > POSITION_THRESHOLD_M * POSITION_THRESHOLD_M) return true;
+
+    float dot =
+        rotation[0] * state.rotation[0]
+            + rotation[1] * state.rotation[1]
+            + rotation[2] * state.rotation[2]
+            + rotation[3] * state.rotation[3];
+    return Math.abs(dot) < ROTATION_THRESHOLD_COS;
+  }
+}
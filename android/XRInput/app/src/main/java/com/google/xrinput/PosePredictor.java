@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import android.os.SystemClock;
+import com.google.ar.core.Pose;
+
+/**
+ * Extrapolates the ARCore pose forward in time, so it describes where the device will be when the
+ * HMD renders it rather than where it was when it was tracked. Position is extrapolated with the
+ * linear velocity of recent ARCore poses, orientation with the gyroscope's angular velocity.
+ *
+ * <p>Poses are expected in the Android sensor coordinate system (Frame.getAndroidSensorPose), so
+ * gyroscope samples apply to them directly. Poses and predictions may come from different threads.
+ *
+ * <p>ARCore does not define the time base of camera frame timestamps, so they are only used for
+ * intervals between poses. Predictions are made against SystemClock.elapsedRealtimeNanos, taken
+ * when each pose is added.
+ */
+public class PosePredictor {
+  private static final long MAX_POSE_GAP_NS = 200_000_000L;
+  private static final long MAX_HORIZON_NS = 100_000_000L;
+  private static final float VELOCITY_SMOOTHING = 0.5f; // weight of the newest velocity estimate
+
+  private final float[] position = new float[3];
+  private final float[] rotation = new float[4]; // x y z w
+  private final float[] velocity = new float[3]; // m/s
+  private long timestamp_ns = 0; // camera frame clock
+  private long addedAt_ns = 0; // SystemClock.elapsedRealtimeNanos base
+
+  /** Adds a new ARCore pose, tracked at timestamp_ns (Frame.getTimestamp, camera frame clock). */
+  public synchronized void addPose(long timestamp_ns, Pose pose) {
+    if (timestamp_ns <= this.timestamp_ns) return; // same camera frame
+
+    float dt = (timestamp_ns - this.timestamp_ns) * 1e-9f;
+    boolean continuous =
+        this.timestamp_ns > 0 && timestamp_ns - this.timestamp_ns < MAX_POSE_GAP_NS;
+
+    float px = position[0], py = position[1], pz = position[2];
+    pose.getTranslation(position, 0);
+    pose.getRotationQuaternion(rotation, 0);
+
+    if (continuous) {
+      velocity[0] += VELOCITY_SMOOTHING * ((position[0] - px) / dt - velocity[0]);
+      velocity[1] += VELOCITY_SMOOTHING * ((position[1] - py) / dt - velocity[1]);
+      velocity[2] += VELOCITY_SMOOTHING * ((position[2] - pz) / dt - velocity[2]);
+    } else {
+      // tracking was interrupted, start over
+      velocity[0] = 0;
+      velocity[1] = 0;
+      velocity[2] = 0;
+    }
+    this.timestamp_ns = timestamp_ns;
+    addedAt_ns = SystemClock.elapsedRealtimeNanos();
+  }
+
+  public synchronized void reset() {
+    timestamp_ns = 0;
+  }
+
+  /** Timestamp of the latest pose (camera frame clock), or 0 if there is none. */
+  public synchronized long getTimestamp() {
+    return timestamp_ns;
+  }
+
+  /**
+   * Predicts the pose at target_ns (SystemClock.elapsedRealtimeNanos base) from the latest pose,
+   * using angularVelocity (rad/s, device frame). The horizon is counted from when the pose was
+   * added and capped at 100 ms. Returns false if there is no pose yet.
+   */
+  public synchronized boolean predict(
+      float[] angularVelocity, long target_ns, float[] outPosition, float[] outRotation) {
+    if (timestamp_ns == 0) return false;
+    long horizon_ns = Math.max(0, Math.min(target_ns - addedAt_ns, MAX_HORIZON_NS));
+    float h = horizon_ns * 1e-9f;
+
+    // position: constant linear velocity
+    outPosition[0] = position[0] + velocity[0] * h;
+    outPosition[1] = position[1] + velocity[1] * h;
+    outPosition[2] = position[2] + velocity[2] * h;
+
+    // orientation: constant angular velocity, rotating about the device's own axes
+    float wx = angularVelocity[0], wy = angularVelocity[1], wz = angularVelocity[2];
+    float rate = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+    float halfAngle = 0.5f * rate * h;
+    float s = rate > 1e-6f ? (float) Math.sin(halfAngle) / rate : 0.5f * h;
+    float dx = wx * s, dy = wy * s, dz = wz * s, dw = (float) Math.cos(halfAngle);
+
+    float qx = rotation[0], qy = rotation[1], qz = rotation[2], qw = rotation[3];
+    outRotation[0] = qw * dx + qx * dw + qy * dz - qz * dy;
+    outRotation[1] = qw * dy - qx * dz + qy * dw + qz * dx;
+    outRotation[2] = qw * dz + qx * dy - qy * dx + qz * dw;
+    outRotation[3] = qw * dw - qx * dx - qy * dy - qz * dz;
+    return true;
+  }
+}
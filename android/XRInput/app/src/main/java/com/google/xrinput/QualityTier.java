@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+/**
+ * Streaming budgets, from full quality to the least the HMD can still work with. The budget
+ * controller steps down through these as the device heats up or its battery drains.
+ */
+public enum QualityTier {
+  HIGH(1f, true, 0),
+  MEDIUM(0.5f, true, 0),
+  LOW(0.25f, false, 100),
+  MINIMAL(0.1f, false, 500);
+
+  /** Factor applied to every rate-limited stream's target rate. */
+  public final float rateScale;
+
+  /** Whether the FULL ARCore profile may run; otherwise ARCore is held at POSE_ONLY. */
+  public final boolean allowsFullARCore;
+
+  /** Lower bound on the sensor batching latency, so the sensor hub wakes the CPU less often. */
+  public final int minReportLatency_ms;
+
+  QualityTier(float rateScale, boolean allowsFullARCore, int minReportLatency_ms) {
+    this.rateScale = rateScale;
+    this.allowsFullARCore = allowsFullARCore;
+    this.minReportLatency_ms = minReportLatency_ms;
+  }
+
+  /** Returns the lower quality of the two tiers. */
+  public static QualityTier worst(QualityTier a, QualityTier b) {
+    return a.ordinal() >= b.ordinal() ? a : b;
+  }
+}
@@ -21,31 +21,110 @@ import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SensorHandler {
   private final String TAG = SensorHandler.class.getSimpleName();
   private SensorManager sensorManager;
+  private Handler sensorCallbackHandler;
+  private OnSensorSampleListener onSensorSampleListener;
   private Map<Integer, SensorEventListener> sensorEventListeners = new HashMap<>();
-  private Map<Integer, float[]> sensorValues = new HashMap<>();
-  private String deviceOrientation;
+  private Map<Integer, Integer> samplingPeriodsUs = new HashMap<>();
+  private final SensorValueStore sensorValues = new SensorValueStore();
+  private final float[] gravity = new float[3];
+  private volatile String deviceOrientation;
 
-  public SensorHandler(Context context) {
+  // batched acquisition (hardware FIFO)
+  private static final int BATCH_BUFFER_CAPACITY = 256;
+  private static final Stream[] STREAMS = Stream.values();
+  private volatile int maxReportLatencyUs = 0;
+  private Handler batchDrainHandler;
+  private boolean batchDrainPending = false;
+  private OnSensorBatchListener onSensorBatchListener;
+  private final SampleRingBuffer[] batchBuffers = new SampleRingBuffer[Stream.COUNT];
+
+  // lossless acquisition (every sample at the hardware rate, drained periodically)
+  private final boolean[] losslessStreams = new boolean[Stream.COUNT];
+  private volatile boolean anyLossless = false;
+  private volatile long losslessDrainInterval_ms = 10;
+  private boolean losslessDrainScheduled = false;
+
+  // on-device orientation fusion (sensor callback thread only)
+  private static final int FUSION_SAMPLING_PERIOD_US = 5000; // 200 Hz
+  private static final long MAX_FUSION_GAP_NS = 100_000_000L;
+  private final OrientationFilter orientationFilter = new OrientationFilter();
+  private volatile boolean fusionEnabled = false;
+  private volatile boolean fusionUsesMagnetometer = false;
+  private final float[] fusionAccel = new float[SensorValueStore.MAX_VALUES];
+  private final float[] fusionMag = new float[SensorValueStore.MAX_VALUES];
+  private final float[] fusedAngularVelocity = new float[3];
+  private long fusedTimestamp_ns = 0;
+
+  // on-device motion gestures (sensor callback thread only)
+  private final MotionGestureRecognizer motionGestureRecognizer = new MotionGestureRecognizer();
+  private volatile boolean motionGesturesEnabled = true;
+
+  /** Notified on the sensor callback thread every time a new sample has been stored. */
+  public interface OnSensorSampleListener {
+    void onSensorSample(int sensorType);
+  }
+
+  /**
+   * Notified on the sensor callback thread with the samples delivered by a hardware batch. The
+   * listener is expected to drain the buffer.
+   */
+  public interface OnSensorBatchListener {
+    void onSensorBatch(int sensorType, SampleRingBuffer samples);
+  }
+
+  /**
+   * @param handler handler whose thread receives all sensor callbacks (e.g. a dedicated streaming
+   *     thread). If null, callbacks are delivered on the main thread.
+   */
+  public SensorHandler(Context context, Handler handler) {
     sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+    sensorCallbackHandler = handler;
+    batchDrainHandler = handler != null ? handler : new Handler(Looper.getMainLooper());
 
     // ensure gravity sensor is registered for device orientation
     registerSensorListener(Sensor.TYPE_GRAVITY);
   }
 
   public void registerSensorListener(int sensorType) {
+    Integer samplingPeriodUs = samplingPeriodsUs.get(sensorType);
+    registerSensorListener(
+        sensorType, samplingPeriodUs != null ? samplingPeriodUs : SensorManager.SENSOR_DELAY_GAME);
+  }
+
+  /**
+   * @param samplingPeriodUs desired delay between samples in microseconds, or one of
+   *     SensorManager.SENSOR_DELAY_*
+   */
+  public void registerSensorListener(int sensorType, int samplingPeriodUs) {
     Sensor sensor = sensorManager.getDefaultSensor(sensorType);
 
     if (sensor != null) {
       // set sampling rate
-      sensorManager.registerListener(listener, sensor, SensorManager.SENSOR_DELAY_GAME);
+      samplingPeriodsUs.put(sensorType, samplingPeriodUs);
+      if (isLossless(sensorType)) {
+        // sample at the hardware rate, regardless of the configured stream rate
+        samplingPeriodUs = SensorManager.SENSOR_DELAY_FASTEST;
+      }
+      samplingPeriodUs = applyFusionSamplingPeriod(sensorType, samplingPeriodUs);
+      if (maxReportLatencyUs > 0) {
+        // let the sensor hub buffer samples in its FIFO and deliver them in batches
+        sensorManager.registerListener(
+            listener, sensor, samplingPeriodUs, maxReportLatencyUs, sensorCallbackHandler);
+      } else {
+        sensorManager.registerListener(listener, sensor, samplingPeriodUs, sensorCallbackHandler);
+      }
 
       // store listener
       sensorEventListeners.put(sensorType, listener);
@@ -54,15 +133,35 @@ public class SensorHandler {
     }
   }
 
-  private SensorEventListener listener = new SensorEventListener() {
+  private SensorEventListener2 listener = new SensorEventListener2() {
     @Override
     public void onSensorChanged(SensorEvent event) {
       // update values for use later
-      sensorValues.put(event.sensor.getType(), event.values.clone());
+      sensorValues.write(event.sensor.getType(), event.timestamp, event.values);
+
+      // in batched or lossless mode, keep every sample (with its hardware timestamp) until the
+      // buffer is drained
+      boolean buffered = maxReportLatencyUs > 0 || isLossless(event.sensor.getType());
+      if (buffered) {
+        addToBatch(event);
+      }
+
+      // fuse every gyroscope sample, at the raw sensor rate
+      if (fusionEnabled && event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+        updateFusedOrientation(event);
+      }
+
+      // recognize motion gestures incrementally
+      if (motionGesturesEnabled) {
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+          motionGestureRecognizer.onAccelerometer(event.values, event.timestamp);
+        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+          motionGestureRecognizer.onGyroscope(event.values, event.timestamp);
+        }
+      }
 
       // compute device orientation (e.g. portrait, landscape)
       if (event.sensor.getType() == Sensor.TYPE_GRAVITY) {
-        float[] gravity = new float[3];
         gravity[0] = event.values[0];
         gravity[1] = event.values[1];
         gravity[2] = event.values[2];
@@ -94,6 +193,15 @@ public class SensorHandler {
         } else {
           // deviceOrientation = "UNKNOWN";
         }
+
+        if (motionGesturesEnabled) {
+          motionGestureRecognizer.onGravity(gravity, event.timestamp);
+        }
+      }
+
+      // notify listener (e.g. to stream this sample right away)
+      if (onSensorSampleListener != null && !buffered) {
+        onSensorSampleListener.onSensorSample(event.sensor.getType());
       }
     }
 
@@ -101,16 +209,264 @@ public class SensorHandler {
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
       // Handle accuracy changes
     }
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+      drainBatches();
+    }
   };
 
+  /** Fusion Functions */
+  private void updateFusedOrientation(SensorEvent event) {
+    if (sensorValues.read(Sensor.TYPE_ACCELEROMETER, fusionAccel) == 0) return;
+    float[] mag = null;
+    if (fusionUsesMagnetometer && sensorValues.read(Sensor.TYPE_MAGNETIC_FIELD, fusionMag) > 0) {
+      mag = fusionMag;
+    }
+
+    // don't integrate across gaps (first sample, re-registration, paused sensors)
+    long dt_ns = fusedTimestamp_ns > 0 ? event.timestamp - fusedTimestamp_ns : 0;
+    if (dt_ns > MAX_FUSION_GAP_NS) dt_ns = 0;
+    orientationFilter.update(event.values, fusionAccel, mag, dt_ns);
+
+    fusedTimestamp_ns = event.timestamp;
+    fusedAngularVelocity[0] = event.values[0];
+    fusedAngularVelocity[1] = event.values[1];
+    fusedAngularVelocity[2] = event.values[2];
+  }
+
+  /** Fusion inputs are sampled at least at the fusion rate, independently of their stream rate. */
+  private int applyFusionSamplingPeriod(int sensorType, int samplingPeriodUs) {
+    if (!fusionEnabled) return samplingPeriodUs;
+    if (sensorType != Sensor.TYPE_GYROSCOPE && sensorType != Sensor.TYPE_ACCELEROMETER) {
+      return samplingPeriodUs;
+    }
+    if (samplingPeriodUs == SensorManager.SENSOR_DELAY_FASTEST) return samplingPeriodUs;
+    if (samplingPeriodUs <= SensorManager.SENSOR_DELAY_NORMAL) {
+      // one of SensorManager.SENSOR_DELAY_*
+      return FUSION_SAMPLING_PERIOD_US;
+    }
+    return Math.min(samplingPeriodUs, FUSION_SAMPLING_PERIOD_US);
+  }
+
+  /**
+   * Enables the on-device orientation fusion of gyroscope and accelerometer (and, if
+   * useMagnetometer, magnetometer for an absolute heading). Requires those sensors to be registered.
+   */
+  public void setFusion(boolean enabled, boolean useMagnetometer) {
+    boolean enabledChanged = enabled != fusionEnabled;
+    fusionEnabled = enabled;
+    fusionUsesMagnetometer = useMagnetometer;
+    batchDrainHandler.post(this::resetFusion);
+
+    // re-register fusion inputs so the new sampling rate takes effect
+    if (enabledChanged) {
+      for (int sensorType : new int[] {Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER}) {
+        if (sensorEventListeners.containsKey(sensorType)) {
+          sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(sensorType));
+          registerSensorListener(sensorType);
+        }
+      }
+    }
+  }
+
+  /** Sets the fusion filter gain (higher converges faster but lets more accelerometer noise in). */
+  public void setFusionGain(float gain) {
+    batchDrainHandler.post(() -> orientationFilter.setGain(gain));
+  }
+
+  private void resetFusion() {
+    orientationFilter.reset();
+    fusedTimestamp_ns = 0;
+  }
+
+  public boolean isFusionUsingMagnetometer() {
+    return fusionUsesMagnetometer;
+  }
+
+  public boolean isFusionEnabled() {
+    return fusionEnabled;
+  }
+
+  /**
+   * Copies the fused orientation (x, y, z, w) and the angular velocity (rad/s) it was last updated
+   * with. Only call from the sensor callback thread. Returns false if there is no estimate yet.
+   */
+  public boolean getFusedOrientation(float[] orientation, float[] angularVelocity) {
+    if (!fusionEnabled || fusedTimestamp_ns == 0) return false;
+    orientationFilter.getQuaternion(orientation);
+    if (angularVelocity != null) {
+      angularVelocity[0] = fusedAngularVelocity[0];
+      angularVelocity[1] = fusedAngularVelocity[1];
+      angularVelocity[2] = fusedAngularVelocity[2];
+    }
+    return true;
+  }
+
+  /** Motion Gesture Functions */
+  public void setMotionGesturesEnabled(boolean enabled) {
+    motionGesturesEnabled = enabled;
+    batchDrainHandler.post(motionGestureRecognizer::reset);
+  }
+
+  public boolean isMotionGesturesEnabled() {
+    return motionGesturesEnabled;
+  }
+
+  /** Notified on the sensor callback thread when a motion gesture is recognized. */
+  public void setOnMotionGestureListener(MotionGestureRecognizer.OnMotionGestureListener listener) {
+    motionGestureRecognizer.setOnMotionGestureListener(listener);
+  }
+
+  /** Batch Functions */
+  private void addToBatch(SensorEvent event) {
+    int sensorType = event.sensor.getType();
+    Stream stream = Stream.fromSensorType(sensorType);
+    if (stream == null) return;
+
+    SampleRingBuffer buffer = batchBuffers[stream.ordinal()];
+    if (buffer == null) {
+      // allocated once, on the first buffered sample of this sensor
+      buffer = new SampleRingBuffer(BATCH_BUFFER_CAPACITY, stream.valueCount);
+      batchBuffers[stream.ordinal()] = buffer;
+    }
+    buffer.add(event.timestamp, event.values);
+
+    if (buffer.isFull()) {
+      // hand over before the buffer overflows
+      if (onSensorBatchListener != null) onSensorBatchListener.onSensorBatch(sensorType, buffer);
+      buffer.clear();
+    } else if (maxReportLatencyUs > 0 && !batchDrainPending) {
+      // a hardware batch is delivered as a burst of callbacks; drain once the burst is processed
+      batchDrainPending = true;
+      batchDrainHandler.post(drainBatchesCode);
+    }
+  }
+
+  private final Runnable drainBatchesCode = this::drainBatches;
+
+  private void drainBatches() {
+    batchDrainPending = false;
+    for (Stream stream : STREAMS) {
+      SampleRingBuffer buffer = batchBuffers[stream.ordinal()];
+      if (buffer == null || buffer.size() == 0) continue;
+      if (onSensorBatchListener != null) {
+        onSensorBatchListener.onSensorBatch(stream.sensorType, buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Enables batched acquisition: samples may be held in the sensor hub's FIFO for up to
+   * maxReportLatencyUs before being delivered, so the application processor wakes up far less
+   * often. 0 disables batching (every sample is delivered and streamed right away).
+   */
+  public void setMaxReportLatency(int maxReportLatencyUs) {
+    if (maxReportLatencyUs == this.maxReportLatencyUs) return;
+
+    // deliver whatever is still buffered under the old mode
+    flushBatches();
+    this.maxReportLatencyUs = maxReportLatencyUs;
+
+    // re-register so the new report latency takes effect
+    for (Map.Entry<Integer, SensorEventListener> entry : sensorEventListeners.entrySet()) {
+      sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(entry.getKey()));
+      registerSensorListener(entry.getKey());
+    }
+  }
+
+  public boolean isBatching() {
+    return maxReportLatencyUs > 0;
+  }
+
+  /** Lossless Functions */
+  private final Runnable drainLosslessCode =
+      new Runnable() {
+        @Override
+        public void run() {
+          drainBatches();
+          if (anyLossless) {
+            batchDrainHandler.postDelayed(this, losslessDrainInterval_ms);
+          } else {
+            losslessDrainScheduled = false;
+          }
+        }
+      };
+
+  private final Runnable startLosslessDrainCode =
+      () -> {
+        if (!losslessDrainScheduled) {
+          losslessDrainScheduled = true;
+          batchDrainHandler.postDelayed(drainLosslessCode, losslessDrainInterval_ms);
+        }
+      };
+
+  /**
+   * Enables lossless streaming of a sensor: it is sampled at the hardware rate and every sample is
+   * kept (with its timestamp) and sent in multi-sample packets every losslessDrainInterval_ms,
+   * instead of only the latest value at the stream's scheduled rate.
+   */
+  public void setLossless(int sensorType, boolean enabled) {
+    Stream stream = Stream.fromSensorType(sensorType);
+    if (stream == null || losslessStreams[stream.ordinal()] == enabled) return;
+    losslessStreams[stream.ordinal()] = enabled;
+
+    boolean any = false;
+    for (boolean lossless : losslessStreams) any |= lossless;
+    anyLossless = any;
+    if (anyLossless) batchDrainHandler.post(startLosslessDrainCode);
+
+    // re-register so the new sampling rate takes effect
+    if (sensorEventListeners.containsKey(sensorType)) {
+      sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(sensorType));
+      registerSensorListener(sensorType);
+    }
+  }
+
+  public boolean isLossless(int sensorType) {
+    if (!anyLossless) return false;
+    Stream stream = Stream.fromSensorType(sensorType);
+    return stream != null && losslessStreams[stream.ordinal()];
+  }
+
+  /** Sets how often samples of lossless sensors are sent (i.e. the latency they add). */
+  public void setLosslessDrainInterval(long interval_ms) {
+    losslessDrainInterval_ms = Math.max(1, interval_ms);
+  }
+
+  /** Asks the sensor hub to deliver all samples currently held in its FIFO. */
+  public void flushBatches() {
+    if (maxReportLatencyUs > 0) sensorManager.flush(listener);
+  }
+
+  public void setOnSensorBatchListener(OnSensorBatchListener listener) {
+    onSensorBatchListener = listener;
+  }
+
+  /** Changes the sampling period of a sensor, re-registering it if it is currently registered. */
+  public void setSamplingPeriod(int sensorType, int samplingPeriodUs) {
+    samplingPeriodsUs.put(sensorType, samplingPeriodUs);
+    if (sensorEventListeners.containsKey(sensorType)) {
+      Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+      sensorManager.unregisterListener(listener, sensor);
+      registerSensorListener(sensorType, samplingPeriodUs);
+    }
+  }
+
   public void unregisterSensorListener(int sensorType) {
     SensorEventListener listener = sensorEventListeners.get(sensorType);
     if (listener != null) {
-      sensorManager.unregisterListener(listener);
+      // all sensors share the listener, so only unregister it from this one
+      sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(sensorType));
       sensorEventListeners.remove(sensorType);
     }
   }
 
+  public boolean isSensorRegistered(int sensorType) {
+    return sensorEventListeners.containsKey(sensorType);
+  }
+
   public void removeAllSensorListeners() {
     for (Map.Entry<Integer, SensorEventListener> entry : sensorEventListeners.entrySet()) {
       sensorManager.unregisterListener(entry.getValue());
@@ -130,8 +486,28 @@ public class SensorHandler {
     }
   }
 
+  public void setOnSensorSampleListener(OnSensorSampleListener listener) {
+    onSensorSampleListener = listener;
+  }
+
+  /**
+   * Copies a consistent snapshot of a sensor's latest values into out (allocation-free, safe to call
+   * from any thread). Returns the number of values copied, or 0 if there is no value yet.
+   */
+  public int getSensorValues(int sensorType, float[] out) {
+    return sensorValues.read(sensorType, out);
+  }
+
+  /** Returns a copy of a sensor's latest values, or null if there is no value yet. */
   public float[] getSensorValues(int sensorType) {
-    return sensorValues.get(sensorType);
+    float[] values = new float[SensorValueStore.MAX_VALUES];
+    int count = sensorValues.read(sensorType, values);
+    return count > 0 ? Arrays.copyOf(values, count) : null;
+  }
+
+  /** Timestamp (ns, SensorEvent time base) of a sensor's latest values. */
+  public long getSensorTimestamp(int sensorType) {
+    return sensorValues.getTimestamp(sensorType);
   }
 
   @SuppressLint("DefaultLocale")
@@ -141,7 +517,7 @@ public class SensorHandler {
     // loop through all sensors
     for (Map.Entry<Integer, SensorEventListener> entry : sensorEventListeners.entrySet()) {
       Sensor sensor = sensorManager.getDefaultSensor(entry.getKey());
-      float[] values = sensorValues.get(entry.getKey());
+      float[] values = getSensorValues(entry.getKey());
       result.append(sensor.getName()).append("\n");
       if (values != null) {
         for (float value : values) {
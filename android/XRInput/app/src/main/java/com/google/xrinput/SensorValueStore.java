@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated store of the latest value of each sensor, indexed by Android sensor type.
+ *
+ * <p>Each slot is protected by a sequence lock: the (single) writer makes the slot's sequence
+ * number odd while it updates the slot and even again when done, and readers retry if the sequence
+ * changed while they were copying. Readers therefore always get a consistent snapshot without
+ * taking a lock, and writing allocates nothing. Values are kept as raw int bits in atomic arrays so
+ * that all accesses are ordered with respect to the sequence numbers.
+ */
+public class SensorValueStore {
+  public static final int MAX_SENSOR_TYPE = 64;
+  public static final int MAX_VALUES = 5;
+
+  private final AtomicIntegerArray sequences = new AtomicIntegerArray(MAX_SENSOR_TYPE);
+  private final AtomicIntegerArray valueBits = new AtomicIntegerArray(MAX_SENSOR_TYPE * MAX_VALUES);
+  private final AtomicIntegerArray valueCounts = new AtomicIntegerArray(MAX_SENSOR_TYPE);
+  private final AtomicLongArray timestamps_ns = new AtomicLongArray(MAX_SENSOR_TYPE);
+
+  /** Stores the latest value of a sensor. Must only be called from one thread. */
+  public void write(int sensorType, long timestamp_ns, float[] values) {
+    if (sensorType < 0 || sensorType >= MAX_SENSOR_TYPE) return;
+    int count = Math.min(values.length, MAX_VALUES);
+    int offset = sensorType * MAX_VALUES;
+
+    sequences.incrementAndGet(sensorType); // odd: write in progress
+    for (int j = 0; j < count; j++) {
+      valueBits.set(offset + j, Float.floatToRawIntBits(values[j]));
+    }
+    valueCounts.set(sensorType, count);
+    timestamps_ns.set(sensorType, timestamp_ns);
+    sequences.incrementAndGet(sensorType); // even: write complete
+  }
+
+  /**
+   * Copies a consistent snapshot of a sensor's latest value into out (which should hold at least
+   * MAX_VALUES entries). Returns the number of values copied, or 0 if the sensor has no value yet.
+   */
+  public int read(int sensorType, float[] out) {
+    if (sensorType < 0 || sensorType >= MAX_SENSOR_TYPE) return 0;
+    int offset = sensorType * MAX_VALUES;
+
+    while (true) {
+      int sequence = sequences.get(sensorType);
+      if ((sequence & 1) != 0) continue; // writer active
+      int count = Math.min(valueCounts.get(sensorType), out.length);
+      for (int j = 0; j < count; j++) {
+        out[j] = Float.intBitsToFloat(valueBits.get(offset + j));
+      }
+      if (sequences.get(sensorType) == sequence) return count;
+    }
+  }
+
+  /** Timestamp of a sensor's latest value, or 0 if it has no value yet. */
+  public long getTimestamp(int sensorType) {
+    if (sensorType < 0 || sensorType >= MAX_SENSOR_TYPE) return 0;
+    return timestamps_ns.get(sensorType);
+  }
+
+  public boolean hasValue(int sensorType) {
+    return sensorType >= 0 && sensorType < MAX_SENSOR_TYPE && valueCounts.get(sensorType) > 0;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import android.hardware.Sensor;
+
+/** Data streams sent to the HMD. Each constant's name is also its message header. */
+public enum Stream {
+  // Sensors
+  ACCELEROMETER(Sensor.TYPE_ACCELEROMETER, 3),
+  GRAVITY(Sensor.TYPE_GRAVITY, 3),
+  GYROSCOPE(Sensor.TYPE_GYROSCOPE, 3),
+  LINEAR_ACCELERATION(Sensor.TYPE_LINEAR_ACCELERATION, 3),
+  ROTATION_VECTOR(Sensor.TYPE_ROTATION_VECTOR, 4),
+  GAME_ROTATION_VECTOR(Sensor.TYPE_GAME_ROTATION_VECTOR, 4),
+  MAGNETIC_FIELD(Sensor.TYPE_MAGNETIC_FIELD, 3),
+  PROXIMITY(Sensor.TYPE_PROXIMITY, 1),
+  AMBIENT_TEMPERATURE(Sensor.TYPE_AMBIENT_TEMPERATURE, 1),
+  LIGHT(Sensor.TYPE_LIGHT, 1),
+  DEVICE_ORIENTATION(Stream.NO_SENSOR, 0),
+  FUSED_ORIENTATION(Stream.NO_SENSOR, 0),
+  MOTION_GESTURE(Stream.NO_SENSOR, 0),
+
+  // ARCore
+  ARPOSE(Stream.NO_SENSOR, 0),
+  PLANE(Stream.NO_SENSOR, 0),
+  DEPTH(Stream.NO_SENSOR, 0),
+
+  // Touch
+  TOUCH_MOVE(Stream.NO_SENSOR, 0),
+  TOUCH_PREDICTED(Stream.NO_SENSOR, 0),
+  STYLUS(Stream.NO_SENSOR, 0),
+  STYLUS_HOVER(Stream.NO_SENSOR, 0),
+
+  // Device Information
+  DEVICE_INFO(Stream.NO_SENSOR, 0);
+
+  public static final int NO_SENSOR = -1;
+  public static final int COUNT = values().length;
+
+  /** Android sensor type backing this stream, or NO_SENSOR. */
+  public final int sensorType;
+
+  /** Number of sensor values sent per sample (0 if the stream is not a sensor). */
+  public final int valueCount;
+
+  Stream(int sensorType, int valueCount) {
+    this.sensorType = sensorType;
+    this.valueCount = valueCount;
+  }
+
+  /** Returns the stream for an Android sensor type, or null if it is not streamed. */
+  public static Stream fromSensorType(int sensorType) {
+    switch (sensorType) {
+      case Sensor.TYPE_ACCELEROMETER:
+        return ACCELEROMETER;
+      case Sensor.TYPE_GRAVITY:
+        return GRAVITY;
+      case Sensor.TYPE_GYROSCOPE:
+        return GYROSCOPE;
+      case Sensor.TYPE_LINEAR_ACCELERATION:
+        return LINEAR_ACCELERATION;
+      case Sensor.TYPE_ROTATION_VECTOR:
+        return ROTATION_VECTOR;
+      case Sensor.TYPE_GAME_ROTATION_VECTOR:
+        return GAME_ROTATION_VECTOR;
+      case Sensor.TYPE_MAGNETIC_FIELD:
+        return MAGNETIC_FIELD;
+      case Sensor.TYPE_PROXIMITY:
+        return PROXIMITY;
+      case Sensor.TYPE_AMBIENT_TEMPERATURE:
+        return AMBIENT_TEMPERATURE;
+      case Sensor.TYPE_LIGHT:
+        return LIGHT;
+      default:
+        return null;
+    }
+  }
+}
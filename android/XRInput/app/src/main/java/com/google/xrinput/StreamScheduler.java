@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinput;
+
+import android.hardware.SensorManager;
+import android.os.SystemClock;
+import java.util.Arrays;
+
+/**
+ * Decides when each stream is due to be sent. Every stream has its own target rate and phase, and
+ * all streams are scheduled against the same clock (SystemClock.elapsedRealtimeNanos, which is also
+ * the time base of SensorEvent timestamps). Slots are aligned to phase + k * period, so a late
+ * sample never causes a burst of catch-up messages. A sample within half a period of the due slot
+ * fills it, so that jitter of sensors sampled at the stream rate does not skip slots. Streams the
+ * HMD has unsubscribed from are never due.
+ */
+public class StreamScheduler {
+  public static final float UNLIMITED = 0;
+
+  private final float[] rate_hz = new float[Stream.COUNT]; // requested, before the rate scale
+  private final long[] period_ns = new long[Stream.COUNT];
+  private final long[] phase_ns = new long[Stream.COUNT];
+  private final long[] nextDue_ns = new long[Stream.COUNT];
+  private final boolean[] subscribed = new boolean[Stream.COUNT];
+  private float rateScale = 1f;
+  private OnRateChangedListener onRateChangedListener;
+
+  /** Notified whenever the (scaled) target rate of a stream changes. */
+  public interface OnRateChangedListener {
+    void onRateChanged(Stream stream, float rateHz);
+  }
+
+  public StreamScheduler() {
+    Arrays.fill(subscribed, true);
+
+    // Motion Sensors
+    setRate(Stream.ACCELEROMETER, 100);
+    setRate(Stream.GRAVITY, 50);
+    setRate(Stream.GYROSCOPE, 200);
+    setRate(Stream.LINEAR_ACCELERATION, 100);
+    setRate(Stream.ROTATION_VECTOR, 100);
+
+    // Position Sensors
+    setRate(Stream.GAME_ROTATION_VECTOR, 100);
+    setRate(Stream.MAGNETIC_FIELD, 50);
+    setRate(Stream.PROXIMITY, 5);
+
+    // Environment Sensors
+    setRate(Stream.AMBIENT_TEMPERATURE, 1);
+    setRate(Stream.LIGHT, 5);
+
+    // Derived / Other
+    setRate(Stream.DEVICE_ORIENTATION, 10);
+    setRate(Stream.FUSED_ORIENTATION, 100);
+    setRate(Stream.MOTION_GESTURE, UNLIMITED);
+    setRate(Stream.ARPOSE, 100);
+    setRate(Stream.PLANE, 10);
+    setRate(Stream.DEPTH, 5);
+    setRate(Stream.TOUCH_MOVE, UNLIMITED);
+    setRate(Stream.TOUCH_PREDICTED, UNLIMITED);
+    setRate(Stream.STYLUS, UNLIMITED);
+    setRate(Stream.STYLUS_HOVER, 60);
+    setRate(Stream.DEVICE_INFO, 50);
+  }
+
+  /** Returns true (and consumes the slot) if the stream is due to be sent now. */
+  public boolean isDue(Stream stream) {
+    return isDue(stream, SystemClock.elapsedRealtimeNanos());
+  }
+
+  public synchronized boolean isDue(Stream stream, long now_ns) {
+    int i = stream.ordinal();
+    if (!subscribed[i]) return false;
+    long period = period_ns[i];
+    if (period <= 0) return true;
+    long halfPeriod = period / 2;
+    if (now_ns < nextDue_ns[i] - halfPeriod) return false;
+
+    if (now_ns < nextDue_ns[i] + halfPeriod) {
+      // fills the due slot, even if slightly early or late
+      nextDue_ns[i] += period;
+    } else {
+      // far behind: schedule next slot on the phase-aligned grid, skipping the missed ones
+      long sinceSlot = Math.floorMod(now_ns - phase_ns[i], period);
+      nextDue_ns[i] = now_ns - sinceSlot + period;
+    }
+    return true;
+  }
+
+  /** Sets the target rate of a stream in Hz. UNLIMITED (or below) sends every sample. */
+  public void setRate(Stream stream, float rateHz) {
+    synchronized (this) {
+      rate_hz[stream.ordinal()] = rateHz;
+    }
+    applyRate(stream);
+  }
+
+  /**
+   * Scales the target rate of every rate-limited stream, e.g. to fit a power budget. UNLIMITED
+   * streams (event-driven ones like touches and gestures) are left as they are.
+   */
+  public void setRateScale(float scale) {
+    synchronized (this) {
+      if (scale == rateScale) return;
+      rateScale = scale;
+    }
+    for (Stream stream : Stream.values()) {
+      if (rate_hz[stream.ordinal()] > UNLIMITED) applyRate(stream);
+    }
+  }
+
+  private void applyRate(Stream stream) {
+    float rateHz;
+    synchronized (this) {
+      int i = stream.ordinal();
+      rateHz = rate_hz[i] > UNLIMITED ? rate_hz[i] * rateScale : UNLIMITED;
+      period_ns[i] = rateHz > UNLIMITED ? (long) (1e9 / rateHz) : 0;
+      nextDue_ns[i] = 0;
+    }
+    if (onRateChangedListener != null) {
+      onRateChangedListener.onRateChanged(stream, rateHz);
+    }
+  }
+
+  /** Sets the phase offset of a stream's send slots, e.g. to stagger streams of equal rate. */
+  public synchronized void setPhase(Stream stream, float phase_ms) {
+    int i = stream.ordinal();
+    phase_ns[i] = (long) (phase_ms * 1e6);
+    nextDue_ns[i] = 0;
+  }
+
+  /**
+   * Subscribes to or unsubscribes from a stream (all streams are subscribed by default).
+   * DEVICE_INFO stays subscribed, since the HMD needs it to discover the device.
+   */
+  public synchronized void setSubscribed(Stream stream, boolean subscribed) {
+    if (stream == Stream.DEVICE_INFO) return;
+    this.subscribed[stream.ordinal()] = subscribed;
+    nextDue_ns[stream.ordinal()] = 0;
+  }
+
+  public synchronized boolean isSubscribed(Stream stream) {
+    return subscribed[stream.ordinal()];
+  }
+
+  public synchronized float getRate(Stream stream) {
+    long period = period_ns[stream.ordinal()];
+    return period > 0 ? (float) (1e9 / period) : UNLIMITED;
+  }
+
+  /** Sensor sampling period matching a stream's target rate, for SensorManager.registerListener. */
+  public synchronized int getSamplingPeriodUs(Stream stream) {
+    long period = period_ns[stream.ordinal()];
+    return period > 0 ? (int) (period / 1000) : SensorManager.SENSOR_DELAY_FASTEST;
+  }
+
+  public void setOnRateChangedListener(OnRateChangedListener listener) {
+    onRateChangedListener = listener;
+  }
+}
@@ -28,6 +28,7 @@ public class Touch {
   public float size;
   public int toolType;
   public int ID;
+  public boolean active = false;
 
   public Touch(int ID_, float x, float y, int toolType_) {
     this.ID = ID_;
@@ -36,6 +37,23 @@ public class Touch {
     this.toolType = toolType_;
   }
 
+  /** Creates an inactive touch slot, to be reused for every touch with this pointer ID. */
+  public Touch(int ID_) {
+    this.ID = ID_;
+  }
+
+  /** (Re)starts this slot for a new touch. */
+  public void start(float x, float y, float p, float s, int toolType_) {
+    positionX = x;
+    positionY = y;
+    deltaX = 0;
+    deltaY = 0;
+    pressure = p;
+    size = s;
+    toolType = toolType_;
+    active = true;
+  }
+
   public void update(float x, float y, float p, float s) {
     deltaX = x - positionX;
     deltaY = y - positionY;
@@ -17,106 +17,182 @@
 package com.google.xrinput;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
-import java.util.HashMap;
+import android.view.ViewConfiguration;
 import java.util.Timer;
 import java.util.TimerTask;
 
 public class TouchHandler
     implements View.OnTouchListener,
+        View.OnHoverListener,
         GestureDetector.OnGestureListener,
         GestureDetector.OnDoubleTapListener,
-        ScaleGestureDetector.OnScaleGestureListener {
+        ScaleGestureDetector.OnScaleGestureListener,
+        MultiTouchGestureRecognizer.OnMultiTouchGestureListener {
   private final String TAG = TouchHandler.class.getSimpleName();
   private CommunicationHandler communicationHandler;
 
-  private HashMap<Integer, Touch> touches = new HashMap<>();
+  // one reusable slot per pointer ID (Android reuses the lowest free IDs, which stay small)
+  private static final int MAX_POINTER_ID = 31;
+  private final Touch[] touches = new Touch[MAX_POINTER_ID + 1];
   private GestureDetector gestureDetector;
   private ScaleGestureDetector scaleGestureDetector;
+  private final TouchPredictor touchPredictor;
+  private final MultiTouchGestureRecognizer multiTouchGestureRecognizer;
   private int numberOfTouches = 0;
   private int currentTapCount = 0;
   private View currentView;
 
+  // low-latency mode: unbuffered dispatch, raw touches processed on the streaming thread
+  private static final int MSG_RAW_TOUCH = 1;
+  private final Handler rawTouchHandler;
+  private volatile boolean lowLatencyMode = false;
+  // once low-latency mode was used, raw touches stay on the streaming thread, so the touch state is
+  // never processed on two threads (UI thread)
+  private boolean rawTouchesOnStreamingThread = false;
+
   // timer
   private Timer resetTapCountTimer;
   private TimerTask resetTapCountTask;
   private boolean timerRunning = false;
   private long tapDetectThreshold_ms = 500;
 
-  // Constructor
-  public TouchHandler(Context context, CommunicationHandler comm) {
+  // Constructor (raw touches are processed on streamingLooper in low-latency mode)
+  public TouchHandler(Context context, CommunicationHandler comm, Looper streamingLooper) {
     gestureDetector = new GestureDetector(context, this);
     gestureDetector.setOnDoubleTapListener(this);
     scaleGestureDetector = new ScaleGestureDetector(context, this);
+    touchPredictor = new TouchPredictor(context);
+    ViewConfiguration viewConfiguration = ViewConfiguration.get(context);
+    multiTouchGestureRecognizer =
+        new MultiTouchGestureRecognizer(
+            viewConfiguration.getScaledTouchSlop(),
+            viewConfiguration.getScaledMinimumFlingVelocity());
+    multiTouchGestureRecognizer.setOnMultiTouchGestureListener(this);
     communicationHandler = comm;
+    for (int i = 0; i < touches.length; i++) {
+      touches[i] = new Touch(i);
+    }
+
+    rawTouchHandler =
+        new Handler(
+            streamingLooper,
+            msg -> {
+              MotionEvent event = (MotionEvent) msg.obj;
+              processRawTouch(event);
+              event.recycle();
+              return true;
+            });
 
     resetTapCountTimer = new Timer();
     initNewTapCountTimerTask();
   }
 
+  /**
+   * Enables low-latency mode (from the next gesture on): touch events are dispatched as soon as
+   * they arrive instead of batched to vsync, and the raw pointer data is handed to the streaming
+   * thread before gesture detection runs. Raw touches keep being processed on the streaming thread
+   * after the mode is turned off.
+   */
+  public void setLowLatencyMode(boolean enabled) {
+    lowLatencyMode = enabled;
+  }
+
+  public boolean isLowLatencyMode() {
+    return lowLatencyMode;
+  }
+
   @Override
   public boolean onTouch(View v, MotionEvent event) {
+    currentView = v;
+    if (event.getActionMasked() == MotionEvent.ACTION_DOWN && lowLatencyMode) {
+      // unbuffered dispatch applies to the whole gesture
+      v.requestUnbufferedDispatch(event);
+      rawTouchesOnStreamingThread = true;
+    }
+
+    if (rawTouchesOnStreamingThread) {
+      // the copy is recycled by the streaming thread
+      rawTouchHandler.obtainMessage(MSG_RAW_TOUCH, MotionEvent.obtain(event)).sendToTarget();
+    } else {
+      processRawTouch(event);
+    }
+
+    scaleGestureDetector.onTouchEvent(event);
+    return gestureDetector.onTouchEvent(event);
+  }
+
+  /** Updates the touch slots and sends TOUCH_* messages for a raw touch event. */
+  private void processRawTouch(MotionEvent event) {
     int index = event.getActionIndex();
     int pointerId = event.getPointerId(index);
-    currentView = v;
+    touchPredictor.record(event);
+    multiTouchGestureRecognizer.onTouchEvent(event);
+    if (communicationHandler.isStylusEnabled()) {
+      sendStylusSamples(event, false);
+    }
 
     switch (event.getActionMasked()) {
       case MotionEvent.ACTION_DOWN:
       case MotionEvent.ACTION_POINTER_DOWN:
-        // Touch newTouch = new Touch(event.getX(index), event.getY(index));
-        // touches.put(pointerId, newTouch);
-        // Log.d(TAG, "onTouch: DOWN");
-        // Log.d(TAG, "Action Index: " + Integer.toString(event.getActionIndex()));
-        // Log.d(TAG, "Pointer ID: " +
-        // Integer.toString(event.getPointerId(event.getActionIndex())));
-        // Log.d(TAG, "Pointer Count: " + Integer.toString(event.getPointerCount()));
-        // Log.d(TAG, "Pressure" + Float.toString(event.getPressure()));
-        // Log.d(TAG, "Tool Type: " + Integer.toString(event.getToolType(pointerId)));
-        // Log.d(TAG, "Raw X: " + Float.toString(event.getRawX()));
-        // Log.d(TAG, "Raw Y: " + Float.toString(event.getRawY()));
-        // Log.d(TAG, "X: " + Float.toString(event.getX()));
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+          // a new gesture; end any touch left over from one that did not end cleanly
+          endAllTouches();
+        }
+        if (pointerId > MAX_POINTER_ID) break;
 
         // PROCESS TOUCH
-        Touch newTouch =
-            new Touch(
-                pointerId,
-                event.getRawX(index),
-                event.getRawY(index),
-                event.getToolType(index));
-        touches.put(pointerId, newTouch);
+        Touch newTouch = touches[pointerId];
+        if (!newTouch.active) numberOfTouches++;
+        newTouch.start(
+            event.getRawX(index),
+            event.getRawY(index),
+            event.getPressure(index),
+            event.getSize(index),
+            event.getToolType(index));
 
         // POST TOUCH EVENT
         communicationHandler.sendTouchDown(newTouch);
-        numberOfTouches++;
         break;
 
       case MotionEvent.ACTION_MOVE:
         // PROCESS TOUCH
         for (int i = 0; i < event.getPointerCount(); i++) {
           pointerId = event.getPointerId(i);
-          Touch touch = touches.get(pointerId);
-          if (touch != null) {
+          if (pointerId > MAX_POINTER_ID) continue;
+          Touch touch = touches[pointerId];
+          if (touch.active) {
             touch.update(
                 event.getRawX(i), event.getRawY(i), event.getPressure(i), event.getSize(i));
 
             // POST TOUCH EVENT
-            communicationHandler.sendTouchMove(touch);
+            if (!communicationHandler.isTouchFramesEnabled()) {
+              communicationHandler.sendTouchMove(touch);
+            }
             // touch.printTouchState();
           }
         }
+        if (communicationHandler.isTouchFramesEnabled()) {
+          // all pointers and historical samples in one message
+          communicationHandler.sendTouchFrame(event);
+        }
+        if (communicationHandler.isTouchPredictionEnabled()) {
+          communicationHandler.sendTouchPrediction(touchPredictor);
+        }
         break;
 
       case MotionEvent.ACTION_UP:
       case MotionEvent.ACTION_POINTER_UP:
         // PROCESS TOUCH
-        Touch touch = touches.get(pointerId);
-        touches.get(pointerId);
-        if (touch != null) {
+        if (pointerId <= MAX_POINTER_ID && touches[pointerId].active) {
+          Touch touch = touches[pointerId];
           touch.update(
               event.getRawX(index),
               event.getRawY(index),
@@ -125,13 +201,50 @@ public class TouchHandler
 
           // POST TOUCH EVENT
           communicationHandler.sendTouchUp(touch);
+          touch.active = false;
+          numberOfTouches--;
         }
-        numberOfTouches--;
+        if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+          // the last pointer went up, so no touch can still be active
+          endAllTouches();
+        }
+        break;
+
+      case MotionEvent.ACTION_CANCEL:
+        // the gesture was aborted (e.g. taken over by the system); end all touches where they are
+        endAllTouches();
         break;
     }
+  }
 
-    scaleGestureDetector.onTouchEvent(event);
-    return gestureDetector.onTouchEvent(event);
+  @Override
+  public boolean onHover(View v, MotionEvent event) {
+    // stylus hovering above the screen (touches are never hover events)
+    if (communicationHandler.isStylusEnabled()) {
+      sendStylusSamples(event, true);
+    }
+    return true;
+  }
+
+  /** Sends the samples of every stylus (or eraser) pointer of this event. */
+  private void sendStylusSamples(MotionEvent event, boolean hover) {
+    for (int i = 0; i < event.getPointerCount(); i++) {
+      int toolType = event.getToolType(i);
+      if (toolType == MotionEvent.TOOL_TYPE_STYLUS || toolType == MotionEvent.TOOL_TYPE_ERASER) {
+        communicationHandler.sendStylus(event, i, hover);
+      }
+    }
+  }
+
+  /** Sends TOUCH_CANCEL for every active touch (at its last position) and frees its slot. */
+  private void endAllTouches() {
+    for (Touch touch : touches) {
+      if (touch.active) {
+        communicationHandler.sendTouchCancel(touch);
+        touch.active = false;
+      }
+    }
+    numberOfTouches = 0;
   }
 
   @Override
@@ -145,9 +258,9 @@ public class TouchHandler
     if (Math.abs(velocityX) > 2000f || Math.abs(velocityY) > 2000f) {
       Log.d(TAG, "Vel: (" + velocityX + ", " + velocityY + ")");
 
-      // Post message
-      int index = event1.getActionIndex();
-      int pointerId = event1.getPointerId(index);
+      // Post message (event2 is the up event of the pointer that flung)
+      int index = event2.getActionIndex();
+      int pointerId = event2.getPointerId(index);
       communicationHandler.sendFling(pointerId, velocityX, velocityY);
     }
     return true;
@@ -273,6 +386,26 @@ public class TouchHandler
     communicationHandler.sendPinchEnd(detector);
   }
 
+  @Override
+  public void onTransformGesture(
+      MultiTouchGestureRecognizer.Gesture gesture,
+      MultiTouchGestureRecognizer.Phase phase,
+      int pointerCount,
+      float focusX,
+      float focusY,
+      float translationX,
+      float translationY,
+      float scale,
+      float angle_deg) {
+    communicationHandler.sendTransformGesture(
+        gesture, phase, pointerCount, focusX, focusY, translationX, translationY, scale, angle_deg);
+  }
+
+  @Override
+  public void onSwipe(int pointerCount, float velocityX, float velocityY) {
+    communicationHandler.sendSwipe(pointerCount, velocityX, velocityY);
+  }
+
   private void initNewTapCountTimerTask() {
     resetTapCountTask =
         new TimerTask() {
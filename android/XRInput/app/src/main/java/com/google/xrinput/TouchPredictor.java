@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+import android.content.Context;
+import android.os.Build;
+import android.view.MotionEvent;
+import android.view.MotionPredictor;
+
+/**
+ * Predicts where the touching pointers will be a short time ahead, so drags on the HMD can stay
+ * attached to the finger despite the network and input latency. Uses the platform MotionPredictor
+ * where the input device supports it (Android 14+), and otherwise extrapolates each pointer with
+ * the smoothed velocity of its recent samples (including the historical samples of each event).
+ *
+ * <p>Positions are raw (screen) coordinates like TOUCH_MOVE. Times are MotionEvent event times in
+ * ns. Must be used from a single thread.
+ */
+public class TouchPredictor {
+  private static final int MAX_POINTER_ID = 31;
+  static final long MAX_HORIZON_NS = 50_000_000L;
+  private static final long MAX_SAMPLE_GAP_NS = 100_000_000L;
+  private static final float VELOCITY_SMOOTHING = 0.3f; // weight of the newest velocity estimate
+
+  private final MotionPredictor platformPredictor;
+  private boolean usePlatformPredictor = false;
+  private float rawOffsetX, rawOffsetY; // raw minus view coordinates of the latest event
+
+  // built-in predictor state, per pointer ID
+  private final boolean[] active = new boolean[MAX_POINTER_ID + 1];
+  private final float[] x = new float[MAX_POINTER_ID + 1];
+  private final float[] y = new float[MAX_POINTER_ID + 1];
+  private final float[] velocityX = new float[MAX_POINTER_ID + 1]; // px/ns
+  private final float[] velocityY = new float[MAX_POINTER_ID + 1];
+  private final long[] time_ns = new long[MAX_POINTER_ID + 1];
+  private long latestTime_ns = 0;
+
+  public TouchPredictor(Context context) {
+    platformPredictor =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+            ? new MotionPredictor(context)
+            : null;
+  }
+
+  /** Records a touch event (every action, in order). */
+  public void record(MotionEvent event) {
+    int action = event.getActionMasked();
+    if (action == MotionEvent.ACTION_DOWN) {
+      usePlatformPredictor =
+          platformPredictor != null
+              && platformPredictor.isPredictionAvailable(event.getDeviceId(), event.getSource());
+    }
+    if (platformPredictor != null) {
+      platformPredictor.record(event);
+    }
+    rawOffsetX = event.getRawX(0) - event.getX(0);
+    rawOffsetY = event.getRawY(0) - event.getY(0);
+    latestTime_ns = CommunicationHandler.getEventTime_ns(event, -1);
+
+    int index = event.getActionIndex();
+    int pointerId = event.getPointerId(index);
+    switch (action) {
+      case MotionEvent.ACTION_DOWN:
+      case MotionEvent.ACTION_POINTER_DOWN:
+        if (action == MotionEvent.ACTION_DOWN) clear();
+        if (pointerId > MAX_POINTER_ID) break;
+        active[pointerId] = true;
+        x[pointerId] = event.getX(index);
+        y[pointerId] = event.getY(index);
+        velocityX[pointerId] = 0;
+        velocityY[pointerId] = 0;
+        time_ns[pointerId] = latestTime_ns;
+        break;
+
+      case MotionEvent.ACTION_MOVE:
+        int historySize = event.getHistorySize();
+        for (int i = 0; i < event.getPointerCount(); i++) {
+          pointerId = event.getPointerId(i);
+          if (pointerId > MAX_POINTER_ID || !active[pointerId]) continue;
+          for (int h = 0; h < historySize; h++) {
+            addSample(
+                pointerId,
+                event.getHistoricalX(i, h),
+                event.getHistoricalY(i, h),
+                CommunicationHandler.getEventTime_ns(event, h));
+          }
+          addSample(pointerId, event.getX(i), event.getY(i), latestTime_ns);
+        }
+        break;
+
+      case MotionEvent.ACTION_POINTER_UP:
+        if (pointerId <= MAX_POINTER_ID) active[pointerId] = false;
+        break;
+
+      case MotionEvent.ACTION_UP:
+      case MotionEvent.ACTION_CANCEL:
+        clear();
+        break;
+    }
+  }
+
+  private void addSample(int pointerId, float sampleX, float sampleY, long sampleTime_ns) {
+    long dt_ns = sampleTime_ns - time_ns[pointerId];
+    if (dt_ns <= 0) return;
+    if (dt_ns < MAX_SAMPLE_GAP_NS) {
+      velocityX[pointerId] +=
+          VELOCITY_SMOOTHING * ((sampleX - x[pointerId]) / dt_ns - velocityX[pointerId]);
+      velocityY[pointerId] +=
+          VELOCITY_SMOOTHING * ((sampleY - y[pointerId]) / dt_ns - velocityY[pointerId]);
+    } else {
+      // the pointer rested, start over
+      velocityX[pointerId] = 0;
+      velocityY[pointerId] = 0;
+    }
+    x[pointerId] = sampleX;
+    y[pointerId] = sampleY;
+    time_ns[pointerId] = sampleTime_ns;
+  }
+
+  private void clear() {
+    for (int i = 0; i <= MAX_POINTER_ID; i++) active[i] = false;
+  }
+
+  /** Event time of the latest recorded event, in ns. */
+  public long getLatestEventTime_ns() {
+    return latestTime_ns;
+  }
+
+  /**
+   * Predicts the position of each touching pointer at target_ns (horizon capped at 50 ms), writing
+   * pointer IDs to outIds and x, y pairs to outPositions. Returns the number of pointers.
+   */
+  public int predict(long target_ns, int[] outIds, float[] outPositions) {
+    target_ns = Math.min(target_ns, latestTime_ns + MAX_HORIZON_NS);
+    if (usePlatformPredictor) {
+      MotionEvent predicted = platformPredictor.predict(target_ns);
+      if (predicted != null) {
+        // the latest sample of the predicted event is the furthest ahead
+        int count = Math.min(predicted.getPointerCount(), outIds.length);
+        for (int i = 0; i < count; i++) {
+          outIds[i] = predicted.getPointerId(i);
+          outPositions[2 * i] = rawOffsetX + predicted.getX(i);
+          outPositions[2 * i + 1] = rawOffsetY + predicted.getY(i);
+        }
+        predicted.recycle();
+        return count;
+      }
+    }
+
+    int count = 0;
+    for (int pointerId = 0; pointerId <= MAX_POINTER_ID && count < outIds.length; pointerId++) {
+      if (!active[pointerId]) continue;
+      long horizon_ns = Math.max(0, target_ns - time_ns[pointerId]);
+      outIds[count] = pointerId;
+      outPositions[2 * count] = rawOffsetX + x[pointerId] + velocityX[pointerId] * horizon_ns;
+      outPositions[2 * count + 1] = rawOffsetY + y[pointerId] + velocityY[pointerId] * horizon_ns;
+      count++;
+    }
+    return count;
+  }
+}
@@ -30,12 +30,17 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class Transceiver {
   private final String TAG = Transceiver.class.getSimpleName();
 
+  // with packing on, messages already queued are multiplexed into one datagram (newline separated)
+  // up to this many bytes
+  private static final int MAX_PACKET_LENGTH = 1400;
+
   private CommunicationHandler communicationHandler;
   private DatagramSocket socket;
   private InetAddress address;
   private BlockingQueue<String> messageQueue;
   private volatile boolean running;
-  private byte[] recvBuffer = new byte[1024]; // Adjust the size as needed
+  private volatile boolean packingEnabled = false;
+  private byte[] recvBuffer = new byte[8192]; // fits a HIT_TEST_BATCH of HitTester.MAX_RAYS rays
   private DatagramPacket recvPacket = new DatagramPacket(recvBuffer, recvBuffer.length);
 
   public Transceiver(
@@ -58,13 +63,37 @@ public class Transceiver {
 
     new Thread(
             () -> {
+              byte[] packetBuffer = new byte[MAX_PACKET_LENGTH];
+              byte[] carry = null; // polled, but did not fit into the previous packet
               while (running) {
                 try {
                   // Log.d(TAG,"Running! Waiting for packet to send...");
-                  String message = messageQueue.take(); // This will block if the queue is empty
-                  byte[] buffer = message.getBytes(StandardCharsets.UTF_8);
-                  DatagramPacket packet =
-                      new DatagramPacket(buffer, buffer.length, address, sendPort);
+                  // This will block if the queue is empty
+                  byte[] message =
+                      carry != null
+                          ? carry
+                          : messageQueue.take().getBytes(StandardCharsets.UTF_8);
+                  carry = null;
+                  byte[] buffer = message;
+                  int length = message.length;
+
+                  if (packingEnabled && length < MAX_PACKET_LENGTH) {
+                    // add whatever else is waiting, without waiting for more
+                    System.arraycopy(message, 0, packetBuffer, 0, length);
+                    buffer = packetBuffer;
+                    String next;
+                    while ((next = messageQueue.poll()) != null) {
+                      byte[] nextBytes = next.getBytes(StandardCharsets.UTF_8);
+                      if (length + 1 + nextBytes.length > MAX_PACKET_LENGTH) {
+                        carry = nextBytes;
+                        break;
+                      }
+                      packetBuffer[length++] = '\n';
+                      System.arraycopy(nextBytes, 0, packetBuffer, length, nextBytes.length);
+                      length += nextBytes.length;
+                    }
+                  }
+                  DatagramPacket packet = new DatagramPacket(buffer, length, address, sendPort);
                   // Log.d(TAG,"Sending message: " + message);
                   socket.send(packet);
                 } catch (InterruptedException e) {
@@ -106,9 +135,21 @@ public class Transceiver {
         .start();
   }
 
+  /**
+   * Turns packing of queued messages into one datagram on or off. The receiver must split datagrams
+   * into lines, so this is off unless the HMD asked for it or the relay is on.
+   */
+  public void setPackingEnabled(boolean packingEnabled) {
+    this.packingEnabled = packingEnabled;
+  }
+
   public void sendData(String data) {
+    sendData(System.currentTimeMillis(), data);
+  }
+
+  /** Sends a message stamped with the given time (ms) instead of the current time. */
+  public void sendData(long timestamp, String data) {
     // pre-append timestamp
-    long timestamp = System.currentTimeMillis();
     String dataToSend = timestamp + "," + data;
 
     // add to message queue
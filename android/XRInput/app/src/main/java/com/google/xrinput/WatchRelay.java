@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinput;
+
+import android.util.Log;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets the phone act as a hub for paired WearOS devices. A watch pointed at the phone's address
+ * sends its stream here instead of to the HMD; each message is re-timestamped into the phone's
+ * clock and forwarded through the phone's own connection, tagged with the watch's sub-device ID
+ * (1, 2, ... in order of arrival, reusing the IDs of watches that went silent; the phone itself is
+ * 0). The relay answers the watch's heartbeat locally and forwards SUB commands from the HMD back
+ * to the watch.
+ */
+public class WatchRelay {
+  private static final String TAG = WatchRelay.class.getSimpleName();
+
+  // the port the HMD listens on, so a watch needs no configuration besides the phone's address
+  public static final int RELAY_PORT = 5555;
+
+  // the clock offset is the minimum observed (receive - send) time over the last two windows
+  private static final long OFFSET_WINDOW_MS = 5000;
+
+  // well within the watch's 1 s heartbeat threshold
+  private static final long HEARTBEAT_INTERVAL_MS = 400;
+
+  // a watch silent for this long gives up its sub-device ID, so that it gets its ID back when it
+  // reconnects from a new address (instead of showing up as a new device on the HMD)
+  private static final long SUB_DEVICE_TIMEOUT_MS = 3000;
+
+  private final CommunicationHandler communicationHandler;
+  private final Map<SocketAddress, SubDevice> subDevicesByAddress = new HashMap<>();
+  private final List<SubDevice> subDevices = new ArrayList<>(); // by ID - 1, null once expired
+  private volatile DatagramSocket socket;
+  private final byte[] heartbeat = "HEARTBEAT".getBytes(StandardCharsets.UTF_8);
+
+  /** A relayed device and the offset from its clock to the phone's. */
+  private static class SubDevice {
+    final int id;
+    final SocketAddress address;
+    long minDelay_ms = Long.MAX_VALUE; // current window
+    long previousMinDelay_ms = Long.MAX_VALUE; // previous window
+    long windowStart_ms = 0;
+    long lastHeartbeat_ms = 0;
+    long lastReceived_ms;
+
+    SubDevice(int id, SocketAddress address) {
+      this.id = id;
+      this.address = address;
+    }
+
+    /** Updates the offset with a message sent at sent_ms and received at received_ms. */
+    long toPhoneTime(long sent_ms, long received_ms) {
+      if (received_ms - windowStart_ms > OFFSET_WINDOW_MS) {
+        previousMinDelay_ms = minDelay_ms;
+        minDelay_ms = Long.MAX_VALUE;
+        windowStart_ms = received_ms;
+      }
+      minDelay_ms = Math.min(minDelay_ms, received_ms - sent_ms);
+
+      // the smallest delay is the clock offset plus the fastest transit, which is what the
+      // HMD would have measured had the watch sent to it directly
+      return sent_ms + Math.min(minDelay_ms, previousMinDelay_ms);
+    }
+  }
+
+  public WatchRelay(CommunicationHandler communicationHandler) {
+    this.communicationHandler = communicationHandler;
+  }
+
+  /** Starts or stops accepting WearOS streams (any thread). */
+  public synchronized void setEnabled(boolean enabled) {
+    if (enabled == isEnabled()) return;
+    if (!enabled) {
+      socket.close();
+      socket = null;
+      return;
+    }
+
+    try {
+      socket = new DatagramSocket(RELAY_PORT);
+    } catch (SocketException e) {
+      Log.e(TAG, "Could not open relay port " + RELAY_PORT, e);
+      return;
+    }
+    DatagramSocket relaySocket = socket;
+    new Thread(() -> receive(relaySocket), TAG).start();
+  }
+
+  public boolean isEnabled() {
+    return socket != null;
+  }
+
+  private void receive(DatagramSocket relaySocket) {
+    byte[] recvBuffer = new byte[2048];
+    DatagramPacket recvPacket = new DatagramPacket(recvBuffer, recvBuffer.length);
+    while (!relaySocket.isClosed()) {
+      try {
+        relaySocket.receive(recvPacket);
+      } catch (IOException e) {
+        break; // closed
+      }
+      long received_ms = System.currentTimeMillis();
+      String message =
+          new String(recvPacket.getData(), 0, recvPacket.getLength(), StandardCharsets.UTF_8);
+      SubDevice subDevice = getSubDevice(recvPacket.getSocketAddress(), received_ms);
+      recvPacket.setLength(recvBuffer.length);
+
+      // <send time (ms, watch clock)>,<header>,...
+      int comma = message.indexOf(',');
+      if (comma <= 0) continue;
+      long sent_ms;
+      try {
+        sent_ms = Long.parseLong(message.substring(0, comma));
+      } catch (NumberFormatException e) {
+        Log.e(TAG, "Invalid relayed message: " + message);
+        continue;
+      }
+      if (!communicationHandler.isRunning()) continue;
+      communicationHandler.sendRelayed(
+          subDevice.id, subDevice.toPhoneTime(sent_ms, received_ms), message.substring(comma + 1));
+
+      // keep the watch's connection indicator in line with the phone's
+      if (communicationHandler.isConnected()
+          && received_ms - subDevice.lastHeartbeat_ms >= HEARTBEAT_INTERVAL_MS) {
+        subDevice.lastHeartbeat_ms = received_ms;
+        send(relaySocket, subDevice.address, heartbeat);
+      }
+    }
+    Log.d(TAG, "Relay stopped");
+  }
+
+  /** Forwards a command from the HMD to a relayed device (any thread). */
+  public void forward(int subDeviceId, String command) {
+    DatagramSocket relaySocket = socket;
+    SubDevice subDevice;
+    synchronized (subDevices) {
+      if (subDeviceId < 1 || subDeviceId > subDevices.size()) return;
+      subDevice = subDevices.get(subDeviceId - 1);
+    }
+    if (relaySocket == null || subDevice == null) return;
+    send(relaySocket, subDevice.address, command.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private SubDevice getSubDevice(SocketAddress address, long received_ms) {
+    synchronized (subDevices) {
+      SubDevice subDevice = subDevicesByAddress.get(address);
+      if (subDevice == null) {
+        expireSubDevices(received_ms);
+        int index = subDevices.indexOf(null);
+        if (index < 0) {
+          index = subDevices.size();
+          subDevices.add(null);
+        }
+        subDevice = new SubDevice(index + 1, address);
+        subDevices.set(index, subDevice);
+        subDevicesByAddress.put(address, subDevice);
+        Log.d(TAG, "Relaying sub-device " + subDevice.id + ": " + address);
+      }
+      subDevice.lastReceived_ms = received_ms;
+      return subDevice;
+    }
+  }
+
+  /** Frees the IDs of sub-devices not heard from in a while (guarded by subDevices). */
+  private void expireSubDevices(long now_ms) {
+    for (int i = 0; i < subDevices.size(); i++) {
+      SubDevice subDevice = subDevices.get(i);
+      if (subDevice != null && now_ms - subDevice.lastReceived_ms > SUB_DEVICE_TIMEOUT_MS) {
+        subDevices.set(i, null);
+        subDevicesByAddress.remove(subDevice.address);
+        Log.d(TAG, "Sub-device " + subDevice.id + " expired: " + subDevice.address);
+      }
+    }
+  }
+
+  private static void send(DatagramSocket relaySocket, SocketAddress address, byte[] data) {
+    try {
+      relaySocket.send(new DatagramPacket(data, data.length, address));
+    } catch (IOException e) {
+      Log.e(TAG, "Could not send to " + address, e);
+    }
+  }
+}
@@ -20,22 +20,27 @@ import android.app.Activity;
 import android.graphics.Point;
 import android.hardware.Sensor;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.ScaleGestureDetector;
 // import com.google.ar.core.Pose;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Timer;
 import java.util.TimerTask;
 
 public class CommunicationHandler {
+  private final String TAG = CommunicationHandler.class.getSimpleName();
   private Transceiver transceiver;
   private final int sendPort = 5555;
   private final int receivePort = 5556;
   private Boolean isConnected = false;
   private Activity mainApp;
   private Vibrator vibrator;
+  private CommandListener commandListener;
 
   // timer
   private Timer resetHeartbeatTimer;
@@ -43,11 +48,30 @@ public class CommunicationHandler {
   private boolean timerRunning = false;
   private final long heartbeatThreshold_ms = 1000;
   private long timeOfLastMsg_touchMove_ms = 0;
-  private final long msgRate_touchMove_ms = 50;
+  private volatile long msgRate_touchMove_ms = 50; // set by the quality tier
   private long timeOfLastMsg_DeviceInfo_ms = 0;
   private final long msgRate_DeviceInfo_ms = 20;
 
+  // multi-sample packets (keeps datagrams well below a typical MTU)
+  private static final int MAX_SAMPLES_PER_BATCH = 20;
+  private final StringBuilder batchBuilder = new StringBuilder(1024);
+
+  // streams the HMD subscribes to (all by default)
+  private final boolean[] subscribed = new boolean[Stream.COUNT];
+
+  // battery- and thermal-aware quality tier (reported on request and whenever it changes)
+  private volatile BudgetController budgetController;
+
+  /** Handles downlink commands that control data acquisition outside of communication. */
+  public interface CommandListener {
+    void onSetSensorBatching(int maxReportLatency_ms);
+
+    /** Called after streams were subscribed or unsubscribed (see isSubscribed). */
+    void onSubscriptionsChanged();
+  }
+
   public CommunicationHandler(Activity activity) {
+    Arrays.fill(subscribed, true);
     mainApp = activity;
     resetHeartbeatTimer = new Timer();
     initResetHeartbeatTask();
@@ -86,8 +110,25 @@ public class CommunicationHandler {
     return isConnected;
   }
 
+  public boolean isSubscribed(Stream stream) {
+    return subscribed[stream.ordinal()];
+  }
+
+  public void setCommandListener(CommandListener listener) {
+    commandListener = listener;
+  }
+
+  public void setBudgetController(BudgetController controller) {
+    budgetController = controller;
+  }
+
+  public void setTouchMoveInterval(long interval_ms) {
+    msgRate_touchMove_ms = interval_ms;
+  }
+
   /** Sensor Messages */
   public void sendDeviceOrientation(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.DEVICE_ORIENTATION)) return;
     String msg = "DEVICE_ORIENTATION," + sensorHandler.getDeviceOrientation();
     if (transceiver != null) {
       transceiver.sendData(msg);
@@ -95,6 +136,7 @@ public class CommunicationHandler {
   }
 
   public void sendAccelerometer(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.ACCELEROMETER)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_ACCELEROMETER);
     if (val == null) return;
 
@@ -105,6 +147,7 @@ public class CommunicationHandler {
   }
 
   public void sendLinearAcceleration(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.LINEAR_ACCELERATION)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_LINEAR_ACCELERATION);
     if (val == null) return;
 
@@ -115,6 +158,7 @@ public class CommunicationHandler {
   }
 
   public void sendGravity(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.GRAVITY)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GRAVITY);
     if (val == null) return;
 
@@ -125,6 +169,7 @@ public class CommunicationHandler {
   }
 
   public void sendGyroscope(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.GYROSCOPE)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GYROSCOPE);
     if (val == null) return;
 
@@ -135,6 +180,7 @@ public class CommunicationHandler {
   }
 
   public void sendGameRotationVector(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.GAME_ROTATION_VECTOR)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_GAME_ROTATION_VECTOR);
     if (val == null) return;
 
@@ -145,6 +191,7 @@ public class CommunicationHandler {
   }
 
   public void sendRotationVector(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.ROTATION_VECTOR)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_ROTATION_VECTOR);
     if (val == null) return;
 
@@ -155,6 +202,7 @@ public class CommunicationHandler {
   }
 
   public void sendMagneticField(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.MAGNETIC_FIELD)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_MAGNETIC_FIELD);
     if (val == null) return;
 
@@ -165,6 +213,7 @@ public class CommunicationHandler {
   }
 
   public void sendProximity(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.PROXIMITY)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_PROXIMITY);
     if (val == null) return;
 
@@ -175,6 +224,7 @@ public class CommunicationHandler {
   }
 
   public void sendAmbientTemperature(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.AMBIENT_TEMPERATURE)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_AMBIENT_TEMPERATURE);
     if (val == null) return;
 
@@ -185,6 +235,7 @@ public class CommunicationHandler {
   }
 
   public void sendLight(SensorHandler sensorHandler) {
+    if (!isSubscribed(Stream.LIGHT)) return;
     float[] val = sensorHandler.getSensorValues(Sensor.TYPE_LIGHT);
     if (val == null) return;
 
@@ -194,6 +245,43 @@ public class CommunicationHandler {
     }
   }
 
+  /**
+   * Sends (and drains) buffered samples as SENSOR_BATCH messages. Each sample carries its age in
+   * microseconds relative to the message timestamp, preserving the hardware sample timing.
+   */
+  public void sendSensorBatch(int sensorType, SampleRingBuffer samples) {
+    Stream stream = Stream.fromSensorType(sensorType);
+    if (stream == null || !isSubscribed(stream)) {
+      samples.clear();
+      return;
+    }
+
+    long now_ns = SystemClock.elapsedRealtimeNanos();
+    int valuesPerSample = samples.getValuesPerSample();
+    while (samples.size() > 0) {
+      int count = Math.min(samples.size(), MAX_SAMPLES_PER_BATCH);
+      batchBuilder.setLength(0);
+      batchBuilder
+          .append("SENSOR_BATCH,")
+          .append(stream.name())
+          .append(',')
+          .append(count)
+          .append(',')
+          .append(valuesPerSample);
+      for (int k = 0; k < count; k++) {
+        batchBuilder.append(',').append((now_ns - samples.getTimestamp(k)) / 1000);
+        for (int j = 0; j < valuesPerSample; j++) {
+          batchBuilder.append(',').append(samples.getValue(k, j));
+        }
+      }
+      samples.remove(count);
+
+      if (transceiver != null) {
+        transceiver.sendData(batchBuilder.toString());
+      }
+    }
+  }
+
   /** ARCore Pose Messages */
   // public void sendPose(Pose pose) {
   //   float[] position = pose.getTranslation();         // x y z
@@ -254,6 +342,7 @@ public class CommunicationHandler {
   }
 
   public void sendTouchMove(Touch touch) {
+    if (!isSubscribed(Stream.TOUCH_MOVE)) return;
     if (System.currentTimeMillis() - timeOfLastMsg_touchMove_ms > msgRate_touchMove_ms) {
       timeOfLastMsg_touchMove_ms = System.currentTimeMillis();
       String msg =
@@ -380,7 +469,28 @@ public class CommunicationHandler {
     }
   }
 
+  public void sendQualityTier(BudgetController budgetController) {
+    String msg =
+        "QUALITY_TIER,"
+            + budgetController.getTier()
+            + ","
+            + (budgetController.isPinned() ? 1 : 0)
+            + ","
+            + budgetController.getThermalStatus()
+            + ","
+            + budgetController.getBatteryPercent()
+            + ","
+            + (budgetController.isCharging() ? 1 : 0);
+    if (transceiver != null) {
+      transceiver.sendData(msg);
+    }
+  }
+
   /** Receive Messages */
+  private static boolean isStreamName(String name) {
+    return !name.isEmpty() && Character.isLetter(name.charAt(0));
+  }
+
   public void parseReceivedMessage(String message) {
     String[] messageParts = message.split(",");
 
@@ -406,6 +516,7 @@ public class CommunicationHandler {
 
         case "WHOAREYOU":
           sendDeviceInfo();
+          if (budgetController != null) sendQualityTier(budgetController);
           break;
 
 
@@ -432,6 +543,52 @@ public class CommunicationHandler {
           if (amplitude < 0 || amplitude > 255) break;
           vibrator.vibrate(VibrationEffect.createOneShot(millis,amplitude));
           break;
+
+        case "SUBSCRIBE":
+        case "UNSUBSCRIBE":
+          // SUBSCRIBE,<stream | ALL>[,<rate (Hz)>][,<stream>[,<rate (Hz)>]]...
+          // UNSUBSCRIBE,<stream | ALL>[,<stream>]...
+          // (rates are not configurable on WearOS and are ignored)
+          if (messageParts.length < 2) break;
+          try {
+            boolean subscribe = header.equals("SUBSCRIBE");
+            for (int i = 1; i < messageParts.length; i++) {
+              String part = messageParts[i];
+              if (!isStreamName(part)) continue;
+              if (part.equals("ALL")) {
+                Arrays.fill(subscribed, subscribe);
+              } else {
+                subscribed[Stream.valueOf(part).ordinal()] = subscribe;
+              }
+            }
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid " + header + " message: " + message);
+          }
+          // the HMD needs DEVICE_INFO to discover the device
+          subscribed[Stream.DEVICE_INFO.ordinal()] = true;
+          if (commandListener != null) commandListener.onSubscriptionsChanged();
+          break;
+
+        case "SET_BATCHING":
+          // SET_BATCHING,<max report latency (ms)>
+          if (messageParts.length < 2 || commandListener == null) break;
+          try {
+            commandListener.onSetSensorBatching(Integer.parseInt(messageParts[1]));
+          } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid SET_BATCHING message: " + message);
+          }
+          break;
+
+        case "SET_BUDGET":
+          // SET_BUDGET,<AUTO | HIGH | MEDIUM | LOW | MINIMAL>
+          if (messageParts.length < 2 || budgetController == null) break;
+          try {
+            budgetController.setPinnedTier(
+                messageParts[1].equals("AUTO") ? null : QualityTier.valueOf(messageParts[1]));
+          } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid SET_BUDGET message: " + message);
+          }
+          break;
       }
     }
   }
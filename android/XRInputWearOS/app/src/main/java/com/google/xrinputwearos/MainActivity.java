@@ -41,10 +41,15 @@ import java.net.SocketException;
 import java.util.Enumeration;
 
 /** This application streams sensor data over a specified wireless network. */
-public class MainActivity extends WearableActivity {
+public class MainActivity extends WearableActivity
+    implements CommunicationHandler.CommandListener {
 
   private static final String TAG = MainActivity.class.getSimpleName();
 
+  // Sensor samples are batched in the sensor hub FIFO by default, so the watch's application
+  // processor and radio wake up far less often (0 streams the latest values from the loop below)
+  private static final int SENSOR_BATCHING_LATENCY_MS = 200;
+
   // Display Variables
   private TextView deviceIPText;
   private EditText hmdIPText;
@@ -56,6 +61,11 @@ public class MainActivity extends WearableActivity {
   private Handler handler = new Handler();
   private Runnable runnableCode;
 
+  // Power Budget
+  private BudgetController budgetController;
+  private QualityTier qualityTier = QualityTier.HIGH;
+  private int requestedMaxReportLatency_ms = SENSOR_BATCHING_LATENCY_MS;
+
   // Handlers
   private SensorHandler sensorHandler;
   private TouchHandler touchHandler;
@@ -82,6 +92,7 @@ public class MainActivity extends WearableActivity {
     initCommunicationHandler();
     initSensorHandler();
     initTouchHandler();
+    initBudgetController();
 
     // Define the code block to be executed
     runnableCode =
@@ -93,18 +104,20 @@ public class MainActivity extends WearableActivity {
             // Polling-based Communication
             if (communicationHandler.isRunning()) {
 
-              // Sensors
-              communicationHandler.sendAccelerometer(sensorHandler);
-              communicationHandler.sendGravity(sensorHandler);
-              communicationHandler.sendGyroscope(sensorHandler);
-              communicationHandler.sendLinearAcceleration(sensorHandler);
-              communicationHandler.sendRotationVector(sensorHandler);
-              communicationHandler.sendGameRotationVector(sensorHandler);
-              communicationHandler.sendMagneticField(sensorHandler);
-              communicationHandler.sendProximity(sensorHandler);
-              communicationHandler.sendAmbientTemperature(sensorHandler);
-              communicationHandler.sendLight(sensorHandler);
-              communicationHandler.sendDeviceOrientation(sensorHandler);
+              // Sensors (batched samples are sent as they are delivered instead)
+              if (!sensorHandler.isBatching()) {
+                communicationHandler.sendAccelerometer(sensorHandler);
+                communicationHandler.sendGravity(sensorHandler);
+                communicationHandler.sendGyroscope(sensorHandler);
+                communicationHandler.sendLinearAcceleration(sensorHandler);
+                communicationHandler.sendRotationVector(sensorHandler);
+                communicationHandler.sendGameRotationVector(sensorHandler);
+                communicationHandler.sendMagneticField(sensorHandler);
+                communicationHandler.sendProximity(sensorHandler);
+                communicationHandler.sendAmbientTemperature(sensorHandler);
+                communicationHandler.sendLight(sensorHandler);
+                communicationHandler.sendDeviceOrientation(sensorHandler);
+              }
 
               // Check if we should stop communication
               if (tapsRemainingToStopConnection == 0) {
@@ -119,9 +132,9 @@ public class MainActivity extends WearableActivity {
               }
             }
 
-            // Repeat this runnable code block again every 80 ms
-            // note: reduced communication rate for WearOS (c.f. 10 ms for standard Android)
-            handler.postDelayed(runnableCode, 80);
+            // Repeat this runnable code block again after the quality tier's loop period
+            // note: reduced communication rate for WearOS (80 ms at full quality)
+            handler.postDelayed(runnableCode, qualityTier.loopPeriod_ms);
           }
         };
 
@@ -131,6 +144,7 @@ public class MainActivity extends WearableActivity {
 
   @Override
   protected void onDestroy() {
+    budgetController.stop();
     super.onDestroy();
   }
 
@@ -168,6 +182,17 @@ public class MainActivity extends WearableActivity {
     // https://developer.android.com/develop/sensors-and-location/sensors/sensors_environment
     sensorHandler.registerSensorListener(Sensor.TYPE_AMBIENT_TEMPERATURE);
     sensorHandler.registerSensorListener(Sensor.TYPE_LIGHT);
+
+    // Batched acquisition
+    sensorHandler.setOnSensorBatchListener(
+        (sensorType, samples) -> {
+          if (!communicationHandler.isRunning()) return;
+          communicationHandler.sendSensorBatch(sensorType, samples);
+          if (sensorType == Sensor.TYPE_GRAVITY) {
+            communicationHandler.sendDeviceOrientation(sensorHandler);
+          }
+        });
+    applySensorBatching();
   }
 
   private void initTouchHandler() {
@@ -182,8 +207,70 @@ public class MainActivity extends WearableActivity {
     rootView.setTranslationZ(-100f);
   }
 
+  private void initBudgetController() {
+    budgetController = new BudgetController(this);
+    communicationHandler.setBudgetController(budgetController);
+    budgetController.setOnQualityTierChangedListener(this::setQualityTier);
+    budgetController.start();
+  }
+
   private void initCommunicationHandler() {
     communicationHandler =  new CommunicationHandler(MainActivity.this);
+    communicationHandler.setCommandListener(this);
+  }
+
+  /** Downlink Commands */
+  @Override
+  public void onSetSensorBatching(int maxReportLatency_ms) {
+    runOnUiThread(
+        () -> {
+          requestedMaxReportLatency_ms = Math.max(0, maxReportLatency_ms);
+          applySensorBatching();
+        });
+  }
+
+  @Override
+  public void onSubscriptionsChanged() {
+    runOnUiThread(this::applySubscriptions);
+  }
+
+  /**
+   * Stops streams nobody subscribes to at the source: registers the sensors that subscribed streams
+   * need and unregisters the others.
+   */
+  private void applySubscriptions() {
+    for (Stream stream : Stream.values()) {
+      if (stream.sensorType == Stream.NO_SENSOR) continue;
+      boolean needed =
+          communicationHandler.isSubscribed(stream)
+              || (stream == Stream.GRAVITY
+                  && communicationHandler.isSubscribed(Stream.DEVICE_ORIENTATION));
+      boolean registered = sensorHandler.isSensorRegistered(stream.sensorType);
+      if (needed && !registered) {
+        sensorHandler.registerSensorListener(stream.sensorType);
+      } else if (!needed && registered) {
+        sensorHandler.unregisterSensorListener(stream.sensorType);
+      }
+    }
+  }
+
+  /** Power Budget */
+  private void setQualityTier(QualityTier tier) {
+    // the main loop picks up the new period on its next iteration
+    qualityTier = tier;
+    communicationHandler.setTouchMoveInterval(tier.touchMoveInterval_ms);
+    applySensorBatching();
+
+    if (communicationHandler.isRunning()) {
+      communicationHandler.sendQualityTier(budgetController);
+    }
+  }
+
+  /** Batches sensor samples for at least as long as the HMD asked and the quality tier needs. */
+  private void applySensorBatching() {
+    int maxReportLatency_ms =
+        Math.max(requestedMaxReportLatency_ms, qualityTier.minReportLatency_ms);
+    sensorHandler.setMaxReportLatency(maxReportLatency_ms * 1000);
   }
 
   private void initUI() {
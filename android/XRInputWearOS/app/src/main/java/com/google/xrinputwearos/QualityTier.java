@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.xrinputwearos;
+
+/**
+ * Streaming budgets, from full quality to the least the HMD can still work with. The budget
+ * controller steps down through these as the watch heats up or its battery drains.
+ */
+public enum QualityTier {
+  HIGH(80, 50, 0),
+  MEDIUM(160, 100, 500),
+  LOW(320, 200, 1000),
+  MINIMAL(640, 400, 2000);
+
+  /** Period of the main loop that polls sensor values when they are not batched. */
+  public final long loopPeriod_ms;
+
+  /** Minimum interval between TOUCH_MOVE messages. */
+  public final long touchMoveInterval_ms;
+
+  /** Lower bound on the sensor batching latency, so the sensor hub wakes the CPU less often. */
+  public final int minReportLatency_ms;
+
+  QualityTier(long loopPeriod_ms, long touchMoveInterval_ms, int minReportLatency_ms) {
+    this.loopPeriod_ms = loopPeriod_ms;
+    this.touchMoveInterval_ms = touchMoveInterval_ms;
+    this.minReportLatency_ms = minReportLatency_ms;
+  }
+
+  /** Returns the lower quality of the two tiers. */
+  public static QualityTier worst(QualityTier a, QualityTier b) {
+    return a.ordinal() >= b.ordinal() ? a : b;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.xrinputwearos;
+
+/**
+ * Fixed-capacity ring buffer of timestamped sensor samples, backed by primitive arrays so adding
+ * and draining samples allocates nothing. The owner hands the samples over as soon as the buffer is
+ * full (see isFull), so no sample is ever overwritten.
+ */
+public class SampleRingBuffer {
+  private final int capacity;
+  private final int valuesPerSample;
+  private final long[] timestamps_ns;
+  private final float[] values;
+  private int head = 0; // index of oldest sample
+  private int size = 0;
+
+  public SampleRingBuffer(int capacity, int valuesPerSample) {
+    this.capacity = capacity;
+    this.valuesPerSample = valuesPerSample;
+    timestamps_ns = new long[capacity];
+    values = new float[capacity * valuesPerSample];
+  }
+
+  /** Appends a sample; the buffer must not be full. */
+  public void add(long timestamp_ns, float[] sample) {
+    int i = (head + size) % capacity;
+    timestamps_ns[i] = timestamp_ns;
+    int n = Math.min(sample.length, valuesPerSample);
+    System.arraycopy(sample, 0, values, i * valuesPerSample, n);
+    for (int j = n; j < valuesPerSample; j++) {
+      values[i * valuesPerSample + j] = 0;
+    }
+    size++;
+  }
+
+  /** Timestamp of the k-th oldest sample. */
+  public long getTimestamp(int k) {
+    return timestamps_ns[(head + k) % capacity];
+  }
+
+  /** Value j of the k-th oldest sample. */
+  public float getValue(int k, int j) {
+    return values[((head + k) % capacity) * valuesPerSample + j];
+  }
+
+  /** Removes the n oldest samples. */
+  public void remove(int n) {
+    n = Math.min(n, size);
+    head = (head + n) % capacity;
+    size -= n;
+  }
+
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  public int getValuesPerSample() {
+    return valuesPerSample;
+  }
+}
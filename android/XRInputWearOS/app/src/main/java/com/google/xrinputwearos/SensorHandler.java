@@ -21,7 +21,10 @@ import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +36,22 @@ public class SensorHandler {
   private Map<Integer, float[]> sensorValues = new HashMap<>();
   private String deviceOrientation;
 
+  // batched acquisition (hardware FIFO)
+  private static final int BATCH_BUFFER_CAPACITY = 256;
+  private int maxReportLatencyUs = 0;
+  private Handler batchDrainHandler = new Handler(Looper.getMainLooper());
+  private boolean batchDrainPending = false;
+  private OnSensorBatchListener onSensorBatchListener;
+  private Map<Integer, SampleRingBuffer> batchBuffers = new HashMap<>();
+
+  /**
+   * Notified with the samples delivered by a hardware batch. The listener is expected to drain the
+   * buffer.
+   */
+  public interface OnSensorBatchListener {
+    void onSensorBatch(int sensorType, SampleRingBuffer samples);
+  }
+
   public SensorHandler(Context context) {
     sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
 
@@ -45,7 +64,13 @@ public class SensorHandler {
 
     if (sensor != null) {
       // set sampling rate
-      sensorManager.registerListener(listener, sensor, SensorManager.SENSOR_DELAY_GAME);
+      if (maxReportLatencyUs > 0) {
+        // let the sensor hub buffer samples in its FIFO and deliver them in batches
+        sensorManager.registerListener(
+            listener, sensor, SensorManager.SENSOR_DELAY_GAME, maxReportLatencyUs);
+      } else {
+        sensorManager.registerListener(listener, sensor, SensorManager.SENSOR_DELAY_GAME);
+      }
 
       // store listener
       sensorEventListeners.put(sensorType, listener);
@@ -54,12 +79,18 @@ public class SensorHandler {
     }
   }
 
-  private SensorEventListener listener = new SensorEventListener() {
+  private SensorEventListener2 listener = new SensorEventListener2() {
         @Override
         public void onSensorChanged(SensorEvent event) {
           // update values for use later
           sensorValues.put(event.sensor.getType(), event.values.clone());
 
+          // in batched mode, keep every sample (with its hardware timestamp) until the batch is
+          // drained
+          if (maxReportLatencyUs > 0) {
+            addToBatch(event);
+          }
+
           // compute device orientation (e.g. portrait, landscape)
           if (event.sensor.getType() == Sensor.TYPE_GRAVITY) {
             float[] gravity = new float[3];
@@ -101,16 +132,96 @@ public class SensorHandler {
         public void onAccuracyChanged(Sensor sensor, int accuracy) {
           // Handle accuracy changes
         }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+          drainBatches();
+        }
       };
 
+  /** Batch Functions */
+  private void addToBatch(SensorEvent event) {
+    int sensorType = event.sensor.getType();
+    Stream stream = Stream.fromSensorType(sensorType);
+    if (stream == null) return;
+
+    SampleRingBuffer buffer = batchBuffers.get(sensorType);
+    if (buffer == null) {
+      buffer = new SampleRingBuffer(BATCH_BUFFER_CAPACITY, stream.valueCount);
+      batchBuffers.put(sensorType, buffer);
+    }
+    buffer.add(event.timestamp, event.values);
+
+    if (buffer.isFull()) {
+      // hand over before the buffer overflows
+      if (onSensorBatchListener != null) onSensorBatchListener.onSensorBatch(sensorType, buffer);
+      buffer.clear();
+    } else if (!batchDrainPending) {
+      // a hardware batch is delivered as a burst of callbacks; drain once the burst is processed
+      batchDrainPending = true;
+      batchDrainHandler.post(drainBatchesCode);
+    }
+  }
+
+  private final Runnable drainBatchesCode = this::drainBatches;
+
+  private void drainBatches() {
+    batchDrainPending = false;
+    for (Map.Entry<Integer, SampleRingBuffer> entry : batchBuffers.entrySet()) {
+      SampleRingBuffer buffer = entry.getValue();
+      if (buffer.size() == 0) continue;
+      if (onSensorBatchListener != null) {
+        onSensorBatchListener.onSensorBatch(entry.getKey(), buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Enables batched acquisition: samples may be held in the sensor hub's FIFO for up to
+   * maxReportLatencyUs before being delivered, so the application processor wakes up far less
+   * often. 0 disables batching.
+   */
+  public void setMaxReportLatency(int maxReportLatencyUs) {
+    if (maxReportLatencyUs == this.maxReportLatencyUs) return;
+
+    // deliver whatever is still buffered under the old mode
+    flushBatches();
+    this.maxReportLatencyUs = maxReportLatencyUs;
+
+    // re-register so the new report latency takes effect
+    for (Map.Entry<Integer, SensorEventListener> entry : sensorEventListeners.entrySet()) {
+      sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(entry.getKey()));
+      registerSensorListener(entry.getKey());
+    }
+  }
+
+  public boolean isBatching() {
+    return maxReportLatencyUs > 0;
+  }
+
+  /** Asks the sensor hub to deliver all samples currently held in its FIFO. */
+  public void flushBatches() {
+    if (maxReportLatencyUs > 0) sensorManager.flush(listener);
+  }
+
+  public void setOnSensorBatchListener(OnSensorBatchListener listener) {
+    onSensorBatchListener = listener;
+  }
+
   public void unregisterSensorListener(int sensorType) {
     SensorEventListener listener = sensorEventListeners.get(sensorType);
     if (listener != null) {
-      sensorManager.unregisterListener(listener);
+      // all sensors share the listener, so only unregister it from this one
+      sensorManager.unregisterListener(listener, sensorManager.getDefaultSensor(sensorType));
       sensorEventListeners.remove(sensorType);
     }
   }
 
+  public boolean isSensorRegistered(int sensorType) {
+    return sensorEventListeners.containsKey(sensorType);
+  }
+
   public void removeAllSensorListeners() {
     for (Map.Entry<Integer, SensorEventListener> entry : sensorEventListeners.entrySet()) {
       sensorManager.unregisterListener(entry.getValue());
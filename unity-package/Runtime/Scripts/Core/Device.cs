@@ -30,6 +30,14 @@ namespace Google.XR.XDTK {
         [Tooltip("(Width, Height) in meters")]
         public Vector2 Size_m;
         [HideInInspector] public bool receivedDeviceInfo = false;
+        [Tooltip("Quality tier the device currently streams at (HIGH, MEDIUM, LOW or MINIMAL)")]
+        public string QualityTier = "HIGH";
+        [Tooltip("Whether the tier is pinned with SET_BUDGET (otherwise set by thermal and battery state)")]
+        public bool QualityTierPinned;
+        [Tooltip("Android PowerManager thermal status (0 = none ... 6 = shutdown)")]
+        public int ThermalStatus;
+        public int BatteryPercent;
+        public bool Charging;
 
         // Sensor Info
         protected const int maxNumberOfTouchIDs = 4;
@@ -41,6 +49,47 @@ namespace Google.XR.XDTK {
         public Vector2[] TouchDelta = new Vector2[maxNumberOfTouchIDs];
         public bool[] isTouched = new bool[maxNumberOfTouchIDs];
         public float[] TouchSize = new float[maxNumberOfTouchIDs];
+        public struct TouchSample {
+            public int TouchID;
+            [Tooltip("Event time in ns (Android uptime base)")]
+            public long Timestamp;
+            public Vector2 Position;
+            public float Pressure;
+            public float Size;
+        }
+        [Tooltip("All samples (oldest first) of the latest TOUCH_FRAME, if touch frames are enabled")]
+        public List<TouchSample> TouchFrameSamples = new List<TouchSample>();
+        [Tooltip("Touch positions predicted for PredictedTouchTargetTimestamp (if touch prediction is enabled)")]
+        public Vector2[] PredictedTouchPos = new Vector2[maxNumberOfTouchIDs];
+        [Tooltip("Time the predicted touch positions are for, in the Android device's clock (ms)")]
+        public long PredictedTouchTargetTimestamp;
+        public struct TransformGesture {
+            [Tooltip("START, MOVE or END")]
+            public string Phase;
+            public int PointerCount;
+            [Tooltip("Focus point (centroid of the fingers), in pixels")]
+            public Vector2 Focus;
+            [Tooltip("Translation since the gesture started, in pixels")]
+            public Vector2 Translation;
+            [Tooltip("Scale since the gesture started")]
+            public float Scale;
+            [Tooltip("Rotation since the gesture started, in degrees (clockwise on the screen)")]
+            public float Angle;
+        }
+        [Header("Stylus")]
+        [Tooltip("Latest stylus sample (if stylus streaming is enabled)")]
+        public Vector2 StylusPos;
+        public float StylusPressure;
+        [Tooltip("Tilt from perpendicular to the screen, in radians")]
+        public float StylusTilt;
+        [Tooltip("Direction the stylus points in, in radians (0 = up, clockwise)")]
+        public float StylusOrientation;
+        [Tooltip("Hover distance from the screen (device units, 0 when touching)")]
+        public float StylusDistance;
+        [Tooltip("Android MotionEvent button state (bit mask)")]
+        public int StylusButtons;
+        public bool StylusTouching;
+        public bool StylusHovering;
         public int TapCount;
         public float Pressure;
         public float PinchSpan;
@@ -52,6 +101,10 @@ namespace Google.XR.XDTK {
         public Quaternion GameRotationVector = new Quaternion();
         [Tooltip("Android Rotation Vector")]
         public Quaternion RotationVector = new Quaternion();
+        [Tooltip("Orientation fused on the device from gyroscope and accelerometer")]
+        public Quaternion FusedOrientation = new Quaternion();
+        [Tooltip("Angular velocity (rad/s) sent along with the fused orientation")]
+        public Vector3 FusedAngularVelocity = new Vector3();
         public Vector3 MagneticField = new Vector3();
         public float Proximity;
         public float AmbientTemperature;
@@ -60,6 +113,48 @@ namespace Google.XR.XDTK {
         public Vector3 PositionAR = new Vector3();
         [Tooltip("Orientation from ARCore")]
         public Quaternion RotationAR = new Quaternion();
+        [Tooltip("Position from ARCore before prediction (if pose prediction is enabled)")]
+        public Vector3 PositionARRaw = new Vector3();
+        [Tooltip("Orientation from ARCore before prediction (if pose prediction is enabled)")]
+        public Quaternion RotationARRaw = new Quaternion();
+        [Tooltip("Time (ms, device clock) the predicted ARCore pose is predicted for")]
+        public long PredictionTargetTimestamp;
+        public class DetectedPlane {
+            public string Type;
+            public Vector3 Position;
+            public Quaternion Rotation;
+            public Vector2 Extent;
+            [Tooltip("Polygon (x,z) in the plane's local coordinates, in meters")]
+            public Vector2[] Polygon;
+        }
+        [Tooltip("Planes detected by ARCore, by plane ID (if plane streaming is enabled)")]
+        public Dictionary<int, DetectedPlane> Planes = new Dictionary<int, DetectedPlane>();
+        [Tooltip("Latest ARCore depth map in mm (0 = unknown), row-major, DepthWidth x DepthHeight")]
+        public ushort[] DepthMap;
+        public int DepthWidth;
+        public int DepthHeight;
+        [Tooltip("Region of the full depth image covered by DepthMap (x, y, width, height in depth pixels)")]
+        public RectInt DepthRegion;
+        [Tooltip("Depth pixels per DepthMap value, along each axis")]
+        public int DepthStep;
+        public long DepthTimestamp;
+        public struct HitTestHit {
+            public bool Hit;
+            [Tooltip("PLANE, POINT or DEPTH_POINT")]
+            public string TrackableType;
+            [Tooltip("Plane ID (as in Planes), or -1")]
+            public int TrackableID;
+            public Vector3 Position;
+            public Quaternion Rotation;
+            [Tooltip("Distance from the ray origin, in meters")]
+            public float Distance;
+        }
+        private int depthFrameID = -1;
+        private string[] depthFragments;
+        private int depthFragmentsReceived;
+        // hit test results still missing messages, by request ID: (hits, rays received)
+        private Dictionary<int, (HitTestHit[], int)> pendingHitTests = new Dictionary<int, (HitTestHit[], int)>();
+        private const int MAX_PENDING_HIT_TESTS = 8;
         public enum Orientation {
             Portrait,
             LandscapeLeft,
@@ -81,6 +176,7 @@ namespace Google.XR.XDTK {
         public enum EventType {
             TouchDown,
             TouchUp,
+            TouchCancel,
             TouchMove,
             Tap,
             TapConfirmed,
@@ -89,7 +185,12 @@ namespace Google.XR.XDTK {
             PinchStart,
             PinchMove,
             PinchEnd,
-            Fling
+            Fling,
+            Rotate,
+            Pan,
+            Swipe,
+            MotionGesture,
+            HitTestResult
         }
         public struct DeviceEvent {
             public EventType eventType;
@@ -109,6 +210,7 @@ namespace Google.XR.XDTK {
             TouchPos = new Vector2[maxNumberOfTouchIDs];
             TouchDelta = new Vector2[maxNumberOfTouchIDs];
             TouchSize = new float[maxNumberOfTouchIDs];
+            PredictedTouchPos = new Vector2[maxNumberOfTouchIDs];
             isTouched = new bool[maxNumberOfTouchIDs];
 
             // initialize event manager
@@ -152,6 +254,10 @@ namespace Google.XR.XDTK {
                     eventManager.TouchUp(ID, deviceEvent.touchID, (Vector2) deviceEvent.data);
                     break;
 
+                case EventType.TouchCancel:
+                    eventManager.TouchCancel(ID, deviceEvent.touchID, (Vector2) deviceEvent.data);
+                    break;
+
                 case EventType.TouchMove:
                     eventManager.TouchMove(ID, deviceEvent.touchID, (Vector2) deviceEvent.data);
                     break;
@@ -188,6 +294,29 @@ namespace Google.XR.XDTK {
                     eventManager.Fling(ID, (Vector2) deviceEvent.data);
                     break;
 
+                case EventType.Rotate:
+                    eventManager.Rotate(ID, (TransformGesture) deviceEvent.data);
+                    break;
+
+                case EventType.Pan:
+                    eventManager.Pan(ID, (TransformGesture) deviceEvent.data);
+                    break;
+
+                case EventType.Swipe:
+                    var swipe = ((int, Vector2)) deviceEvent.data;
+                    eventManager.Swipe(ID, swipe.Item1, swipe.Item2);
+                    break;
+
+                case EventType.MotionGesture:
+                    var motionGesture = ((string, int)) deviceEvent.data;
+                    eventManager.MotionGesture(ID, motionGesture.Item1, motionGesture.Item2);
+                    break;
+
+                case EventType.HitTestResult:
+                    var hitTestResult = ((int, HitTestHit[])) deviceEvent.data;
+                    eventManager.HitTestResult(ID, hitTestResult.Item1, hitTestResult.Item2);
+                    break;
+
                 default:
                     Debug.LogError("Unrecognized device event");
                     break;
@@ -233,6 +362,20 @@ namespace Google.XR.XDTK {
                     eventQueue.Enqueue(deviceEvent);
                     break;
 
+                case "TOUCH_CANCEL":
+                    // the touch ended without being lifted (its deltas are 0)
+                    touchID = int.Parse(data[1]);
+                    if (touchID >= maxNumberOfTouchIDs) return;
+                    isTouched[touchID] = false;
+                    SaveTouchInfo(data);
+                    
+                    // queue event
+                    deviceEvent.eventType = EventType.TouchCancel;
+                    deviceEvent.touchID = touchID;
+                    deviceEvent.data = TouchPos[touchID];
+                    eventQueue.Enqueue(deviceEvent);
+                    break;
+
                 case "TOUCH_MOVE":
                     touchID = int.Parse(data[1]);
                     if (touchID >= maxNumberOfTouchIDs) return;
@@ -245,6 +388,86 @@ namespace Google.XR.XDTK {
                     deviceEvent.data = TouchDelta[touchID];
                     eventQueue.Enqueue(deviceEvent);
                     break;
+
+                case "TOUCH_FRAME":
+                    // TOUCH_FRAME, pointerCount, sampleCount, (id, toolType) x pointers, 
+                    //              (time (ns), (x, y, pressure, size) x pointers) x samples
+                    int pointerCount = int.Parse(data[1]);
+                    int touchSampleCount = int.Parse(data[2]);
+                    int firstSample = 3 + 2 * pointerCount;
+                    int sampleLength = 1 + 4 * pointerCount;
+                    if (firstSample + touchSampleCount * sampleLength > data.Length) break;
+                    TouchFrameSamples.Clear();
+                    for (int sample = 0; sample < touchSampleCount; sample++) {
+                        int sampleStart = firstSample + sample * sampleLength;
+                        for (int pointer = 0; pointer < pointerCount; pointer++) {
+                            int valueStart = sampleStart + 1 + 4 * pointer;
+                            TouchFrameSamples.Add(new TouchSample {
+                                TouchID = int.Parse(data[3 + 2 * pointer]),
+                                Timestamp = long.Parse(data[sampleStart]),
+                                Position = new Vector2(float.Parse(data[valueStart]), float.Parse(data[valueStart + 1])),
+                                Pressure = float.Parse(data[valueStart + 2]),
+                                Size = float.Parse(data[valueStart + 3])
+                            });
+                        }
+                    }
+
+                    // apply the latest sample of each pointer like TOUCH_MOVE
+                    int latestStart = firstSample + (touchSampleCount - 1) * sampleLength;
+                    for (int pointer = 0; pointer < pointerCount && touchSampleCount > 0; pointer++) {
+                        touchID = int.Parse(data[3 + 2 * pointer]);
+                        if (touchID >= maxNumberOfTouchIDs) continue;
+                        int valueStart = latestStart + 1 + 4 * pointer;
+                        Vector2 position = new Vector2(float.Parse(data[valueStart]), float.Parse(data[valueStart + 1]));
+                        TouchDelta[touchID] = position - TouchPos[touchID];
+                        TouchPos[touchID] = position;
+                        Pressure = float.Parse(data[valueStart + 2]);
+                        TouchSize[touchID] = float.Parse(data[valueStart + 3]);
+                        ToolType = (Tool) (int.Parse(data[4 + 2 * pointer]) - 1);
+                        isTouched[touchID] = true;
+
+                        // queue event
+                        deviceEvent.eventType = EventType.TouchMove;
+                        deviceEvent.touchID = touchID;
+                        deviceEvent.data = TouchDelta[touchID];
+                        eventQueue.Enqueue(deviceEvent);
+                    }
+                    break;
+
+                case "STYLUS":
+                case "STYLUS_HOVER":
+                    // STYLUS(_HOVER), id, toolType, action, buttons, sampleCount, 
+                    //                 (time (ns), x, y, pressure, tilt, orientation, distance) x samples
+                    int stylusSampleCount = int.Parse(data[5]);
+                    int latestStylusSample = 6 + (stylusSampleCount - 1) * 7;
+                    if (stylusSampleCount <= 0 || latestStylusSample + 6 >= data.Length) break;
+                    StylusPos = new Vector2(float.Parse(data[latestStylusSample + 1]), 
+                                        float.Parse(data[latestStylusSample + 2]));
+                    StylusPressure = float.Parse(data[latestStylusSample + 3]);
+                    StylusTilt = float.Parse(data[latestStylusSample + 4]);
+                    StylusOrientation = float.Parse(data[latestStylusSample + 5]);
+                    StylusDistance = float.Parse(data[latestStylusSample + 6]);
+                    StylusButtons = int.Parse(data[4]);
+                    string stylusAction = data[3];
+                    if (header == "STYLUS") {
+                        StylusTouching = stylusAction != "UP" && stylusAction != "CANCEL";
+                        if (StylusTouching) StylusHovering = false;
+                    } else {
+                        StylusHovering = stylusAction != "EXIT";
+                    }
+                    break;
+
+                case "TOUCH_PREDICTED":
+                    // TOUCH_PREDICTED, target timestamp (ms), count, (id, x, y) x count
+                    PredictedTouchTargetTimestamp = long.Parse(data[1]);
+                    int predictedCount = int.Parse(data[2]);
+                    for (int i = 0; i < predictedCount && 5 + 3 * i < data.Length; i++) {
+                        touchID = int.Parse(data[3 + 3 * i]);
+                        if (touchID >= maxNumberOfTouchIDs) continue;
+                        PredictedTouchPos[touchID] = new Vector2(float.Parse(data[4 + 3 * i]), 
+                                                        float.Parse(data[5 + 3 * i]));
+                    }
+                    break;
                 #endregion
 
                 #region TOUCHGESTURES
@@ -299,11 +522,37 @@ namespace Google.XR.XDTK {
                     Vector2 flingDir = new Vector2(float.Parse(data[1]), 
                                                 float.Parse(data[2]));
 
-                    // queue event
+                    // queue event (with the pointer ID, if sent)
                     deviceEvent.eventType = EventType.Fling;
+                    if (data.Length > 3) deviceEvent.touchID = int.Parse(data[3]);
                     deviceEvent.data = flingDir;
                     eventQueue.Enqueue(deviceEvent);
                     break;
+
+                case "ROTATE":
+                case "PAN":
+                    // ROTATE/PAN, phase, pointerCount, focus, translation, scale, angle
+                    TransformGesture transformGesture = new TransformGesture {
+                        Phase = data[1],
+                        PointerCount = int.Parse(data[2]),
+                        Focus = new Vector2(float.Parse(data[3]), float.Parse(data[4])),
+                        Translation = new Vector2(float.Parse(data[5]), float.Parse(data[6])),
+                        Scale = float.Parse(data[7]),
+                        Angle = float.Parse(data[8])
+                    };
+
+                    // queue event
+                    deviceEvent.eventType = header == "ROTATE" ? EventType.Rotate : EventType.Pan;
+                    deviceEvent.data = transformGesture;
+                    eventQueue.Enqueue(deviceEvent);
+                    break;
+
+                case "SWIPE_N":
+                    // SWIPE_N, pointerCount, velocity (px/s)
+                    deviceEvent.eventType = EventType.Swipe;
+                    deviceEvent.data = (int.Parse(data[1]), new Vector2(float.Parse(data[2]), float.Parse(data[3])));
+                    eventQueue.Enqueue(deviceEvent);
+                    break;
                 
                 case "PINCH_START":
                     PinchSpan = float.Parse(data[1]);
@@ -349,6 +598,141 @@ namespace Google.XR.XDTK {
                     RotationAR = convertAndroidToUnityQuaternion(RotationAR, header);
                     break;
 
+                case "ARPOSE_PREDICTED":
+                    // save target timestamp of the prediction
+                    PredictionTargetTimestamp = long.Parse(data[1]);
+
+                    // save predicted x y z position and orientation
+                    PositionAR = new Vector3(float.Parse(data[2]), 
+                                        float.Parse(data[3]),
+                                        float.Parse(data[4]));
+                    PositionAR = convertAndroidToUnityVector3(PositionAR);
+                    RotationAR = new Quaternion(float.Parse(data[5]), 
+                                            float.Parse(data[6]), 
+                                            float.Parse(data[7]),
+                                            float.Parse(data[8]));
+                    RotationAR = convertAndroidToUnityQuaternion(RotationAR, header);
+
+                    // save pose as tracked
+                    PositionARRaw = new Vector3(float.Parse(data[9]), 
+                                        float.Parse(data[10]),
+                                        float.Parse(data[11]));
+                    PositionARRaw = convertAndroidToUnityVector3(PositionARRaw);
+                    RotationARRaw = new Quaternion(float.Parse(data[12]), 
+                                            float.Parse(data[13]), 
+                                            float.Parse(data[14]),
+                                            float.Parse(data[15]));
+                    RotationARRaw = convertAndroidToUnityQuaternion(RotationARRaw, header);
+                    break;
+
+                case "PLANE":
+                    // PLANE, id, type, position, rotation, extent, vertexCount, firstVertex, (x,z in mm) x N
+                    int planeID = int.Parse(data[1]);
+                    int vertexCount = int.Parse(data[12]);
+                    int firstVertex = int.Parse(data[13]);
+                    if (!Planes.TryGetValue(planeID, out DetectedPlane plane)) {
+                        plane = new DetectedPlane();
+                        Planes[planeID] = plane;
+                    }
+                    plane.Type = data[2];
+                    plane.Position = convertAndroidToUnityVector3(new Vector3(float.Parse(data[3]), 
+                                                    float.Parse(data[4]), 
+                                                    float.Parse(data[5])));
+                    plane.Rotation = convertAndroidToUnityQuaternion(new Quaternion(float.Parse(data[6]), 
+                                                    float.Parse(data[7]), 
+                                                    float.Parse(data[8]),
+                                                    float.Parse(data[9])), header);
+                    plane.Extent = new Vector2(float.Parse(data[10]), float.Parse(data[11]));
+                    if (plane.Polygon == null || plane.Polygon.Length != vertexCount) {
+                        plane.Polygon = new Vector2[vertexCount];
+                    }
+                    for (int i = 0; 14 + 2 * i + 1 < data.Length && firstVertex + i < vertexCount; i++) {
+                        plane.Polygon[firstVertex + i] = new Vector2(int.Parse(data[14 + 2 * i]) / 1000f, 
+                                                    int.Parse(data[14 + 2 * i + 1]) / 1000f);
+                    }
+                    break;
+
+                case "PLANE_REMOVED":
+                    // PLANE_REMOVED, id, id of the plane that subsumed it (or -1)
+                    Planes.Remove(int.Parse(data[1]));
+                    break;
+
+                case "DEPTH":
+                    // DEPTH, frameID, fragment, fragmentCount, timestamp, source width, source height,
+                    //        region x, region y, step, width, height, base64 data
+                    int depthFrameIDReceived = int.Parse(data[1]);
+                    int fragmentIndex = int.Parse(data[2]);
+                    int fragmentCount = int.Parse(data[3]);
+                    if (depthFrameIDReceived != depthFrameID || depthFragments == null || depthFragments.Length != fragmentCount) {
+                        // a new frame (any fragments left of the previous one are dropped)
+                        depthFrameID = depthFrameIDReceived;
+                        depthFragments = new string[fragmentCount];
+                        depthFragmentsReceived = 0;
+                    }
+                    if (fragmentIndex >= fragmentCount || depthFragments[fragmentIndex] != null) break;
+                    depthFragments[fragmentIndex] = data[12];
+                    if (++depthFragmentsReceived < fragmentCount) break;
+
+                    int depthWidth = int.Parse(data[10]);
+                    int depthHeight = int.Parse(data[11]);
+                    DepthMap = DecodeDepth(System.Convert.FromBase64String(string.Concat(depthFragments)), 
+                                            depthWidth, depthHeight);
+                    DepthWidth = depthWidth;
+                    DepthHeight = depthHeight;
+                    DepthTimestamp = long.Parse(data[4]);
+                    DepthStep = int.Parse(data[9]);
+                    DepthRegion = new RectInt(int.Parse(data[7]), int.Parse(data[8]), 
+                                            Mathf.Min(depthWidth * DepthStep, int.Parse(data[5]) - int.Parse(data[7])), 
+                                            Mathf.Min(depthHeight * DepthStep, int.Parse(data[6]) - int.Parse(data[8])));
+                    depthFragments = null;
+                    break;
+
+                case "HIT_TEST_RESULT":
+                    // HIT_TEST_RESULT, requestID, frame timestamp, ray count, first ray,
+                    //                  (NONE | type, id, position, rotation, distance) x N
+                    int hitTestRequestID = int.Parse(data[1]);
+                    int rayCount = int.Parse(data[3]);
+                    int firstRay = int.Parse(data[4]);
+                    if (!pendingHitTests.TryGetValue(hitTestRequestID, out var pendingHitTest) || pendingHitTest.Item1.Length != rayCount) {
+                        // results of requests that lost a message are dropped eventually
+                        if (pendingHitTests.Count >= MAX_PENDING_HIT_TESTS) pendingHitTests.Clear();
+                        pendingHitTest = (new HitTestHit[rayCount], 0);
+                    }
+                    HitTestHit[] hits = pendingHitTest.Item1;
+                    int hitIndex = 5;
+                    for (int i = firstRay; i < hits.Length && hitIndex < data.Length; i++) {
+                        pendingHitTest.Item2++;
+                        if (data[hitIndex] == "NONE") {
+                            hitIndex++;
+                            continue;
+                        }
+                        hits[i].Hit = true;
+                        hits[i].TrackableType = data[hitIndex];
+                        hits[i].TrackableID = int.Parse(data[hitIndex + 1]);
+                        hits[i].Position = convertAndroidToUnityVector3(new Vector3(float.Parse(data[hitIndex + 2]), 
+                                                    float.Parse(data[hitIndex + 3]), 
+                                                    float.Parse(data[hitIndex + 4])));
+                        hits[i].Rotation = convertAndroidToUnityQuaternion(new Quaternion(float.Parse(data[hitIndex + 5]), 
+                                                    float.Parse(data[hitIndex + 6]), 
+                                                    float.Parse(data[hitIndex + 7]),
+                                                    float.Parse(data[hitIndex + 8])), header);
+                        hits[i].Distance = float.Parse(data[hitIndex + 9]);
+                        hitIndex += 10;
+                    }
+                    if (pendingHitTest.Item2 < hits.Length) {
+                        pendingHitTests[hitTestRequestID] = pendingHitTest;
+                        break;
+                    }
+                    pendingHitTests.Remove(hitTestRequestID);
+                    deviceEvent.eventType = EventType.HitTestResult;
+                    deviceEvent.data = (hitTestRequestID, hits);
+                    eventQueue.Enqueue(deviceEvent);
+                    break;
+
+                case "PING":
+                    // answered by the transceiver (round-trip time measurement)
+                    break;
+
                 case "ACCELEROMETER":
                     // save x y z acceleration (including gravity)
                     Accelerometer = new Vector3(float.Parse(data[1]), 
@@ -388,6 +772,20 @@ namespace Google.XR.XDTK {
                     RotationVector = convertAndroidToUnityQuaternion(RotVector_Android, header);
                     break;
                 
+                case "FUSED_ORIENTATION":
+                    // save x y z w fused orientation (and x y z angular velocity, if sent)
+                    var FusedOrientation_Android = new Quaternion(float.Parse(data[1]), 
+                                                float.Parse(data[2]), 
+                                                float.Parse(data[3]),
+                                                float.Parse(data[4]));
+                    FusedOrientation = convertAndroidToUnityQuaternion(FusedOrientation_Android, header);
+                    if (data.Length > 7) {
+                        FusedAngularVelocity = new Vector3(float.Parse(data[5]), 
+                                                    float.Parse(data[6]), 
+                                                    float.Parse(data[7]));
+                    }
+                    break;
+                
                 case "MAGNETIC_FIELD":
                     // save x y z magnetic field
                     MagneticField = new Vector3(float.Parse(data[1]), 
@@ -417,6 +815,13 @@ namespace Google.XR.XDTK {
                     Light = float.Parse(data[1]);
                     break;
 
+                case "MOTION_GESTURE":
+                    // queue gesture (SHAKE, FLIP, TWIST, BACK_TAP) and its value
+                    deviceEvent.eventType = EventType.MotionGesture;
+                    deviceEvent.data = (data[1], int.Parse(data[2]));
+                    eventQueue.Enqueue(deviceEvent);
+                    break;
+
                 case "DEVICE_ORIENTATION":
                     // save orientation
                     string msg = data[1];
@@ -442,6 +847,18 @@ namespace Google.XR.XDTK {
                     }
                     break;
 
+                case "SENSOR_BATCH":
+                    // SENSOR_BATCH, stream, count, valuesPerSample, (age_us, values...) x count
+                    // apply the latest sample of the batch to the matching sensor field
+                    int sampleCount = int.Parse(data[2]);
+                    int valuesPerSample = int.Parse(data[3]);
+                    if (sampleCount <= 0) break;
+                    int latestSample = 4 + (sampleCount - 1) * (valuesPerSample + 1);
+                    if (latestSample + valuesPerSample >= data.Length) break;
+                    ParseStandardData(timeStamp + "," + data[1] + "," 
+                                    + string.Join(",", data, latestSample + 1, valuesPerSample));
+                    break;
+
                 case "DEVICE_INFO":
                     receivedDeviceInfo = true;
                     DeviceName = data[1];
@@ -453,6 +870,15 @@ namespace Google.XR.XDTK {
                     Size_m = Size_in * 0.0254f;
                     break;
 
+                case "QUALITY_TIER":
+                    // QUALITY_TIER, tier, pinned, thermal status, battery %, charging
+                    QualityTier = data[1];
+                    QualityTierPinned = data[2] == "1";
+                    ThermalStatus = int.Parse(data[3]);
+                    BatteryPercent = int.Parse(data[4]);
+                    Charging = data[5] == "1";
+                    break;
+
                 default:
                     Debug.Log("[Device " + ID.ToString() + "] Received message with unknown header: " + header);
                     break;
@@ -491,6 +917,47 @@ namespace Google.XR.XDTK {
             ToolType = (Tool) (int.Parse(data[8]) - 1);
         }
 
+        // Builds a HIT_TEST_BATCH message for rays in the device's AR (Unity) coordinates, to be sent
+        // to this device's Address. The results arrive through OnHitTestResult.
+        public string FormatHitTestBatch(int requestID, Ray[] rays) {
+            var msg = new System.Text.StringBuilder("HIT_TEST_BATCH," + requestID + "," + rays.Length);
+            foreach (Ray ray in rays) {
+                Vector3 origin = convertAndroidToUnityVector3(ray.origin);
+                Vector3 direction = convertAndroidToUnityVector3(ray.direction);
+                for (int i = 0; i < 3; i++) msg.Append(',').Append(origin[i].ToString(System.Globalization.CultureInfo.InvariantCulture));
+                for (int i = 0; i < 3; i++) msg.Append(',').Append(direction[i].ToString(System.Globalization.CultureInfo.InvariantCulture));
+            }
+            return msg.ToString();
+        }
+
+        // Decodes a DEPTH frame: per 64-value block a 5-bit Rice parameter k, then per value a unary
+        // quotient (ones ended by a zero) and k low bits, or 24 ones and the raw 17-bit value.
+        // Values are zigzag-coded differences to the left neighbour (the value above in column 0).
+        private static ushort[] DecodeDepth(byte[] bytes, int width, int height) {
+            ushort[] depth = new ushort[width * height];
+            int bitPosition = 0;
+            int ReadBits(int count) {
+                int value = 0;
+                for (int i = 0; i < count; i++, bitPosition++) {
+                    int bit = bitPosition >> 3 < bytes.Length ? (bytes[bitPosition >> 3] >> (7 - (bitPosition & 7))) & 1 : 0;
+                    value = (value << 1) | bit;
+                }
+                return value;
+            }
+
+            int k = 0;
+            for (int i = 0; i < depth.Length; i++) {
+                if (i % 64 == 0) k = ReadBits(5);
+                int quotient = 0;
+                while (quotient < 24 && ReadBits(1) == 1) quotient++;
+                int z = quotient == 24 ? ReadBits(17) : (quotient << k) | ReadBits(k);
+                int residual = (z >> 1) ^ -(z & 1);
+                int prediction = i % width > 0 ? depth[i - 1] : (i >= width ? depth[i - width] : 0);
+                depth[i] = (ushort) (prediction + residual);
+            }
+            return depth;
+        }
+
         private Quaternion convertAndroidToUnityQuaternion(Quaternion androidQuat, string sensor = null) {
             // baseline remapping to left handed coordinate system
             // (x right, y up, z towards user) ---> (x right, y up, z away from user)
@@ -502,6 +969,7 @@ namespace Google.XR.XDTK {
             // to align android sensor (not ARcore) coordinates with ARcore (y-up), need additional -90 deg rotation about x
             if (sensor == "GAME_ROTATION_VECTOR") unityQuat = Quaternion.AngleAxis(-90f,Vector3.right) * unityQuat;
             if (sensor == "ROTATION_VECTOR") unityQuat = Quaternion.AngleAxis(-90f,Vector3.right) * unityQuat;
+            if (sensor == "FUSED_ORIENTATION") unityQuat = Quaternion.AngleAxis(-90f,Vector3.right) * unityQuat;
 
             return unityQuat;
         }
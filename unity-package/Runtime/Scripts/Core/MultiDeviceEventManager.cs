@@ -29,6 +29,12 @@ namespace Google.XR.XDTK {
         {
             OnTouchUp.Invoke(deviceID, touchID, touchPos);
         }
+        // a touch ends with either OnTouchUp or OnTouchCancel
+        public UnityEvent<int, int, Vector2> OnTouchCancel;
+        public void TouchCancel(int deviceID, int touchID, Vector2 touchPos)
+        {
+            OnTouchCancel.Invoke(deviceID, touchID, touchPos);
+        }
         public UnityEvent<int, int, Vector2> OnTouchMove;
         public void TouchMove(int deviceID, int touchID, Vector2 delta)
         {
@@ -81,6 +87,35 @@ namespace Google.XR.XDTK {
             OnFling.Invoke(deviceID, direction);
         }
 
+        public UnityEvent<int, Device.TransformGesture> OnRotate;
+        public void Rotate(int deviceID, Device.TransformGesture gesture) {
+            OnRotate.Invoke(deviceID, gesture);
+        }
+
+        public UnityEvent<int, Device.TransformGesture> OnPan;
+        public void Pan(int deviceID, Device.TransformGesture gesture) {
+            OnPan.Invoke(deviceID, gesture);
+        }
+
+        public UnityEvent<int, int, Vector2> OnSwipe;
+        public void Swipe(int deviceID, int pointerCount, Vector2 velocity) {
+            OnSwipe.Invoke(deviceID, pointerCount, velocity);
+        }
+
+        #endregion
+
+        #region MOTIONGESTURES
+        public UnityEvent<int, string, int> OnMotionGesture;
+        public void MotionGesture(int deviceID, string gesture, int value) {
+            OnMotionGesture.Invoke(deviceID, gesture, value);
+        }
+        #endregion
+
+        #region HITTEST
+        public UnityEvent<int, int, Device.HitTestHit[]> OnHitTestResult;
+        public void HitTestResult(int deviceID, int requestID, Device.HitTestHit[] hits) {
+            OnHitTestResult.Invoke(deviceID, requestID, hits);
+        }
         #endregion
     }
 }
\ No newline at end of file
@@ -41,6 +41,7 @@ namespace Google.XR.XDTK {
 
         // Device Discovery
         private int nextID = 0;
+        private HashSet<string> registeredSubDeviceHosts = new HashSet<string>(); // phones relaying other devices
         private bool creatingNewDevice = false;
         private string addressforCreatedDevice = "";
         private int IDforCreatedDevice = -1;
@@ -122,8 +123,8 @@ namespace Google.XR.XDTK {
         void RemoveInvalidAddressesAndIDs() {
             foreach (Device d in FindObjectsOfType<Device>()) {
                 // Check for invalid addresses
-                if (!string.IsNullOrEmpty(d.Address) && !IPAddress.TryParse(d.Address, out _)) {
-                    Debug.LogWarning("[UDPTransceiver] Device address " + d.Address + " is not a valid IPv4 address. Removing.");
+                if (!string.IsNullOrEmpty(d.Address) && !IsValidAddress(d.Address)) {
+                    Debug.LogWarning("[UDPTransceiver] Device address " + d.Address + " is not a valid IPv4 address (or relayed address, IPv4/subDeviceID). Removing.");
                     d.Address = null;
                 }
 
@@ -135,6 +136,13 @@ namespace Google.XR.XDTK {
             }
         }
 
+        // IPv4 address, or "phone address/subDeviceID" for a device relayed through a phone
+        static bool IsValidAddress(string address) {
+            string[] parts = address.Split('/');
+            if (parts.Length > 2 || !IPAddress.TryParse(parts[0], out _)) return false;
+            return parts.Length == 1 || int.TryParse(parts[1], out int subDeviceID) && subDeviceID > 0;
+        }
+
         // Add Devices in scene to to database 
         void InitializeDevices() {
             foreach (Device d in FindObjectsOfType<Device>()) {
@@ -154,22 +162,46 @@ namespace Google.XR.XDTK {
             receivedIPaddress = receiverIP.Address.ToString();
             if (debugPrint) Debug.Log("[UDPTransceiver] Received message: " + receivedString);
 
+            // A packet may carry several messages, one per line
+            foreach (string message in receivedString.Split('\n')) {
+                if (message.Length > 0) HandleMessage(message, receivedIPaddress);
+            }
+
+            // Send HEARTBEAT back to sender
+            if (registeredAddresses.Contains(receivedIPaddress) || registeredSubDeviceHosts.Contains(receivedIPaddress)) {
+                SendMessage("HEARTBEAT", receivedIPaddress);
+            }
+
+            receiver.BeginReceive(AC, obj);
+        }
+
+        void HandleMessage(string message, string address) {
+            // Messages relayed by a phone for a paired device (timestamp,SUB,subDeviceID,header,...)
+            // belong to a device of their own, addressed as "phone address/subDeviceID"
+            int firstComma = message.IndexOf(',');
+            if (firstComma >= 0 && string.CompareOrdinal(message, firstComma, ",SUB,", 0, 5) == 0) {
+                int idEnd = message.IndexOf(',', firstComma + 5);
+                if (idEnd < 0) return;
+                registeredSubDeviceHosts.Add(address);
+                address = address + "/" + message.Substring(firstComma + 5, idEnd - firstComma - 5);
+                message = message.Substring(0, firstComma) + message.Substring(idEnd);
+            }
+
             // Handle device discovery
-            if (!registeredAddresses.Contains(receivedIPaddress)) {
+            if (!registeredAddresses.Contains(address)) {
                 // If  we haven't heard from this device before, handle adding it
-                Debug.Log("[UDPTransceiver] Attempting to add device: " + receivedIPaddress);
-                HandleAddDevice(receivedString,receivedIPaddress);
+                Debug.Log("[UDPTransceiver] Attempting to add device: " + address);
+                HandleAddDevice(message,address);
             } 
             
-            if (registeredAddresses.Contains(receivedIPaddress)) {
-                // Route message to proper device script
-                base.RouteMessageToDevice(receivedString,receivedIPaddress);
+            if (registeredAddresses.Contains(address)) {
+                // Answer round-trip time measurements right away, echoing the payload
+                int pingIndex = message.IndexOf(",PING,");
+                if (pingIndex >= 0) SendMessage("PONG," + message.Substring(pingIndex + 6), address);
 
-                // Send HEARTBEAT back to sender
-                SendMessage("HEARTBEAT", receivedIPaddress);
+                // Route message to proper device script
+                base.RouteMessageToDevice(message,address);
             }
-
-            receiver.BeginReceive(AC, obj);
         }
 
         // Add 
@@ -266,6 +298,9 @@ namespace Google.XR.XDTK {
             } 
             // otherwise, request DEVICE_INFO from this device
             else {
+                // messages may be packed several to a datagram, which ReceivedUDPPacket splits
+                // (relayed devices reach us packed by their phone anyway)
+                if (address.IndexOf('/') < 0) SendMessage("SET_PACKING,1", address);
                 SendMessage("WHOAREYOU", address);
                 Debug.Log("[UDPTransceiver] Sent device info request to: " + address);
             }
@@ -290,8 +325,14 @@ namespace Google.XR.XDTK {
         }
 
         // Send message to specific IP address (Unity --> Android)
+        // > relayed devices ("phone address/subDeviceID") are reached through their phone
         public void SendMessage(string message, string IPAddressToSendTo)
         {
+            int slash = IPAddressToSendTo.IndexOf('/');
+            if (slash >= 0) {
+                message = "SUB," + IPAddressToSendTo.Substring(slash + 1) + "," + message;
+                IPAddressToSendTo = IPAddressToSendTo.Substring(0, slash);
+            }
             senderIPEndPoint = new IPEndPoint(IPAddress.Parse(IPAddressToSendTo), senderPort);
             byte[] data = Encoding.UTF8.GetBytes(message);
             sender.Send(data, data.Length, senderIPEndPoint);
@@ -38,11 +38,13 @@ namespace Google.XR.XDTK {
         private void OnEnable() {
             eventManager.OnTouchDown.AddListener(OnTouchDown);
             eventManager.OnTouchUp.AddListener(OnTouchUp);
+            eventManager.OnTouchCancel.AddListener(OnTouchUp);
         }
 
         private void OnDisable() {
             eventManager.OnTouchDown.RemoveListener(OnTouchDown);
             eventManager.OnTouchUp.RemoveListener(OnTouchUp);
+            eventManager.OnTouchCancel.RemoveListener(OnTouchUp);
         }
 
         void Awake() {